@@ -0,0 +1,50 @@
+package benchmark;
+
+// Наборы выражений для бенчмарков. Все выражения начинаются и заканчиваются числом
+// и укладываются в ограничение "практики 1" (не более 100 слагаемых),
+// чтобы оба поколения калькулятора сравнивались на одинаковом входе.
+public final class Expressions {
+    public static final String SHORT = "2*3+4";
+    public static final String LONG = repeat(90);
+    public static final String NESTED = nest(30);
+    // Функции есть только во второй практике
+    public static final String FUNCTIONS =
+            "3234+((exp(2)*843/log(3234)-4232123)/(34+123+32+5))*exp(log(1024)/10)-log(exp(3)*2)";
+
+    private Expressions() {
+    }
+
+    public static String of(String shape) {
+        switch (shape) {
+            case "short":
+                return SHORT;
+            case "long":
+                return LONG;
+            case "nested":
+                return NESTED;
+            case "functions":
+                return FUNCTIONS;
+            default:
+                throw new IllegalArgumentException("Unknown expression shape: " + shape);
+        }
+    }
+
+    // 1+2*3-4/5+6^2... - terms слагаемых с чередующимися операторами
+    private static String repeat(int terms) {
+        char[] operators = {'+', '*', '-', '/'};
+        StringBuilder expression = new StringBuilder("1");
+        for (int i = 2; i <= terms; i++) {
+            expression.append(operators[i % operators.length]).append(i % 9 + 1);
+        }
+        return expression.toString();
+    }
+
+    // 1+(1+(1+(...)*2)*2)*2 - depth уровней вложенности скобок
+    private static String nest(int depth) {
+        String expression = "1";
+        for (int i = 0; i < depth; i++) {
+            expression = "1+(" + expression + ")*2";
+        }
+        return expression;
+    }
+}
@@ -0,0 +1,45 @@
+package benchmark;
+
+import model.CalculatorModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// CalculatorModel.calculate первой практики; cached = false - каждый вызов проходит весь разбор
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CalculatorBenchmark {
+    @Param({"short", "long", "nested"})
+    private String shape;
+
+    @Param({"true", "false"})
+    private boolean cached;
+
+    private CalculatorModel model;
+    private String expression;
+
+    @Setup
+    public void setup() {
+        model = cached ? new CalculatorModel() : new CalculatorModel(0);
+        expression = Expressions.of(shape);
+    }
+
+    @Benchmark
+    public double calculate() {
+        return model.calculate(expression);
+    }
+}
@@ -0,0 +1,62 @@
+package benchmark;
+
+import model.CalculatorModel;
+import model.CompiledExpression;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Вычисление формулы с переменными по столбцам: интерпретатор, байт-код и блоки на Vector API.
+// Форки запускаются с модулем jdk.incubator.vector, иначе режим vector совпадал бы с bytecode
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class CompiledExpressionBenchmark {
+    private static final int ROWS = 100_000;
+
+    @Param({"x*2+log(y)", "(x*2+y*3-x*y)/(1+x*x+y*y)", "x^2+y^2-x/y"})
+    private String formula;
+
+    @Param({"interpreter", "bytecode", "vector"})
+    private String tier;
+
+    private CompiledExpression expression;
+    private double[][] columns;
+    private double[] output;
+
+    @Setup
+    public void setup() {
+        CalculatorModel model = new CalculatorModel();
+        model.setCompilationThreshold(tier.equals("bytecode") ? 0 : -1);
+        model.setVectorized(tier.equals("vector"));
+        expression = model.compile(formula, "x", "y");
+
+        Random random = new Random(42);
+        columns = new double[2][ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            columns[0][i] = random.nextDouble() * 100;
+            columns[1][i] = random.nextDouble() * 100 + 1;
+        }
+        output = new double[ROWS];
+    }
+
+    @Benchmark
+    public double[] evaluateColumns() {
+        expression.evaluate(columns, output);
+        return output;
+    }
+}
@@ -0,0 +1,70 @@
+package benchmark;
+
+import model.CalculatorModel;
+import model.Spreadsheet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Изменение одной ячейки в листе из LAYERS слоев по width ячеек: каждая ячейка слоя ссылается
+// на две случайные ячейки предыдущего. "leaf" меняет формулу в последнем слое (пересчет одной
+// ячейки), "input" - значение в первом слое (пересчет всего, что от него зависит)
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class SpreadsheetBenchmark {
+    private static final int LAYERS = 10;
+
+    @Param({"100", "1000"})
+    private int width;
+
+    private Spreadsheet sheet;
+    private int step;
+
+    @Setup
+    public void setup() {
+        sheet = new Spreadsheet(new CalculatorModel());
+        Random random = new Random(42);
+        for (int i = 0; i < width; i++) {
+            sheet.set(cell(0, i), i);
+        }
+        for (int layer = 1; layer < LAYERS; layer++) {
+            for (int i = 0; i < width; i++) {
+                sheet.set(cell(layer, i), cell(layer - 1, random.nextInt(width)) + " * 0.5 + " +
+                        cell(layer - 1, random.nextInt(width)) + " / 3");
+            }
+        }
+    }
+
+    @Benchmark
+    public double input() {
+        step++;
+        sheet.set(cell(0, step % width), step);
+        return sheet.get(cell(LAYERS - 1, 0));
+    }
+
+    @Benchmark
+    public double leaf() {
+        step++;
+        sheet.set(cell(LAYERS - 1, step % width), cell(LAYERS - 2, 0) + " + " + (step & 7));
+        return sheet.get(cell(LAYERS - 1, step % width));
+    }
+
+    private static String cell(int layer, int index) {
+        return "c" + layer + "_" + index;
+    }
+}
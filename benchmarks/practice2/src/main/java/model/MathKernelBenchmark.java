@@ -0,0 +1,51 @@
+package model;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// MathKernel против прежних реализаций: факториал циклом и log2 двумя вызовами Math.log.
+// Класс лежит в пакете model, потому что MathKernel не публичный.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class MathKernelBenchmark {
+    @Param({"5", "20", "100", "170"})
+    private double n;
+
+    @Benchmark
+    public double factorialLoop() {
+        double result = 1;
+        for (int i = 2; i <= n; i++) {
+            result *= i;
+        }
+        return result;
+    }
+
+    @Benchmark
+    public double factorialTable() {
+        return MathKernel.factorial(n);
+    }
+
+    @Benchmark
+    public double log2TwoCalls() {
+        return Math.log(n) / Math.log(2);
+    }
+
+    @Benchmark
+    public double log2Kernel() {
+        return MathKernel.log2(n);
+    }
+}
@@ -1,34 +1,73 @@
 package model;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Stack;
 import java.util.regex.Pattern;
 
 public class CalculatorModel {
+    private static final int DEFAULT_CACHE_CAPACITY = 1024;
+    private static final int DEFAULT_MAX_TERMS = 100;
+    // Признак числа, не представимого точно в long (дробное или слишком большое).
+    // Настоящее значение Long.MIN_VALUE записать числом нельзя: разбор видит только модуль
+    private static final long NOT_EXACT = Long.MIN_VALUE;
+
+    private final ExpressionCache<RpnProgram> cache;
+    // Ограничение на число слагаемых (чисел) в выражении; проверяется при разборе
+    private volatile int maxTerms = DEFAULT_MAX_TERMS;
+
+    public CalculatorModel() {
+        this(DEFAULT_CACHE_CAPACITY);
+    }
+
+    public CalculatorModel(int cacheCapacity) {
+        this.cache = new ExpressionCache<>(cacheCapacity);
+    }
+
     public double calculate(String expression) throws IllegalArgumentException {
         if (expression == null || expression.trim().isEmpty()) {
             throw new IllegalArgumentException("Expression cannot be empty");
         }
 
-        if (!Pattern.matches("^-?\\d.*\\d$", expression)) {
-            throw new IllegalArgumentException("Expression must start and end with a number");
+        // Повторяющиеся выражения берутся из кэша и сразу вычисляются
+        RpnProgram program = cache.get(expression, this::compile);
+        return evaluateRPN(program);
+    }
+
+    public ExpressionCache<RpnProgram> getCache() {
+        return cache;
+    }
+
+    public int getMaxTerms() {
+        return maxTerms;
+    }
+
+    public void setMaxTerms(int maxTerms) {
+        if (maxTerms < 1) {
+            throw new IllegalArgumentException("Term limit must be positive");
         }
+        this.maxTerms = maxTerms;
+        cache.clear();
+    }
 
-        String[] tokens = expression.split("(?<=[-+*/^//])|(?=[-+*/^//])");
-        if (tokens.length > 199) {
-            throw new IllegalArgumentException("Too many terms (maximum 100)");
+    private RpnProgram compile(String expression) {
+        if (!Pattern.matches("^-?\\d.*\\d$", expression)) {
+            throw new IllegalArgumentException("Expression must start and end with a number");
         }
 
-        String rpn = convertToRPN(expression);
-        return evaluateRPN(rpn);
+        return convertToRPN(expression, maxTerms);
     }
 
-    private String convertToRPN(String expression) {
-        StringBuilder output = new StringBuilder();
+    // Один проход по строке: токены ОПЗ собираются сразу в список, без промежуточной строки
+    private RpnProgram convertToRPN(String expression, int termLimit) {
+        List<String> output = new ArrayList<>();
         Stack<String> operatorStack = new Stack<>();
+        int terms = 0;
 
         int i = 0;
-        if (expression.charAt(0) == '-') {
-            output.append('-');
+        boolean negative = expression.charAt(0) == '-';
+        if (negative) {
             i = 1;
         }
 
@@ -37,95 +76,239 @@ public class CalculatorModel {
 
             // Проверка на целочисленное деление "//"
             if (i < expression.length() - 1 && c == '/' && expression.charAt(i + 1) == '/') {
-                while (!operatorStack.isEmpty() &&
-                        getPrecedence(operatorStack.peek()) >= getPrecedence("//")) {
-                    output.append(operatorStack.pop()).append(' ');
-                }
-                operatorStack.push("//");
+                pushOperator("//", output, operatorStack);
                 i += 2;
                 continue;
             }
 
             if (Character.isDigit(c) || c == '.') {
+                int start = i;
                 while (i < expression.length() &&
                         (Character.isDigit(expression.charAt(i)) || expression.charAt(i) == '.')) {
-                    output.append(expression.charAt(i++));
+                    i++;
+                }
+                if (++terms > termLimit) {
+                    throw new IllegalArgumentException("Too many terms (maximum " + termLimit + ")");
                 }
-                output.append(' ');
+                // Знак в начале выражения относится к первому числу
+                output.add(negative ? expression.substring(start - 1, i) : expression.substring(start, i));
+                negative = false;
                 continue;
             }
 
-            if (isOperator(c) || c == '(' || c == ')') {
-                if (c == '(') {
-                    operatorStack.push(String.valueOf(c));
-                } else if (c == ')') {
-                    while (!operatorStack.isEmpty() && !operatorStack.peek().equals("(")) {
-                        output.append(operatorStack.pop()).append(' ');
-                    }
-                    operatorStack.pop();
-                } else {
-                    String op = String.valueOf(c);
-                    while (!operatorStack.isEmpty() &&
-                            getPrecedence(operatorStack.peek()) >= getPrecedence(op)) {
-                        output.append(operatorStack.pop()).append(' ');
-                    }
-                    operatorStack.push(op);
+            if (c == '(') {
+                operatorStack.push("(");
+            } else if (c == ')') {
+                while (!operatorStack.isEmpty() && !operatorStack.peek().equals("(")) {
+                    output.add(operatorStack.pop());
                 }
-                i++;
-            } else {
-                i++;
+                operatorStack.pop();
+            } else if (isOperator(c)) {
+                pushOperator(operatorName(c), output, operatorStack);
             }
+            i++;
         }
 
         while (!operatorStack.isEmpty()) {
-            output.append(operatorStack.pop()).append(' ');
+            output.add(operatorStack.pop());
         }
 
-        return output.toString();
+        return toProgram(output);
     }
 
-    private double evaluateRPN(String rpn) {
-        Stack<Double> stack = new Stack<>();
-        String[] tokens = rpn.split("\\s+");
+    // Числа разбираются здесь же, один раз: при вычислении остаются только операции.
+    // Здесь же решается, можно ли считать выражение точно в long
+    private RpnProgram toProgram(List<String> tokens) {
+        String[] operators = new String[tokens.size()];
+        double[] values = new double[tokens.size()];
+        long[] integers = new long[tokens.size()];
+        boolean integer = true;
+        int size = 0;
 
         for (String token : tokens) {
-            if (token.isEmpty()) continue;
+            if (isOperator(token)) {
+                // "/" - деление с дробной частью
+                integer &= !token.equals("/");
+                operators[size++] = token;
+            } else if (isNumeric(token)) {
+                values[size] = Double.parseDouble(token);
+                long exact = parseInteger(token);
+                integer &= exact != NOT_EXACT;
+                integers[size++] = exact;
+            } else {
+                // Прочие токены (например, незакрытая скобка) при вычислении не участвуют
+                integer = false;
+            }
+        }
 
-            if (isNumeric(token)) {
-                stack.push(Double.parseDouble(token));
-            } else if (isOperator(token)) {
-                if (stack.size() < 2) {
-                    throw new IllegalArgumentException("Invalid expression");
-                }
-                double b = stack.pop();
-                double a = stack.pop();
-                stack.push(applyOperator(a, b, token));
+        return new RpnProgram(Arrays.copyOf(operators, size), Arrays.copyOf(values, size),
+                integer ? Arrays.copyOf(integers, size) : null);
+    }
+
+    private void pushOperator(String op, List<String> output, Stack<String> operatorStack) {
+        while (!operatorStack.isEmpty() &&
+                getPrecedence(operatorStack.peek()) >= getPrecedence(op)) {
+            output.add(operatorStack.pop());
+        }
+        operatorStack.push(op);
+    }
+
+    private double evaluateRPN(RpnProgram program) {
+        // Выражения из целых чисел считаются точно в long
+        String[] operators = program.operators;
+        if (program.integers != null) {
+            long[] exact = new long[operators.length];
+            if (evaluateIntegerRPN(program, exact)) {
+                return exact[0];
+            }
+        }
+
+        double[] stack = new double[operators.length];
+        int size = 0;
+
+        for (int i = 0; i < operators.length; i++) {
+            if (operators[i] == null) {
+                stack[size++] = program.values[i];
+                continue;
             }
+            if (size < 2) {
+                throw new IllegalArgumentException("Invalid expression");
+            }
+            double b = stack[--size];
+            stack[size - 1] = applyOperator(stack[size - 1], b, operators[i]);
         }
 
-        if (stack.size() != 1) {
+        if (size != 1) {
             throw new IllegalArgumentException("Invalid expression");
         }
 
-        return stack.pop();
+        return stack[0];
+    }
+
+    // false - результат не помещается в long или есть ошибка; тогда выражение
+    // вычисляется в double, где ошибки и сообщаются. Результат - в stack[0].
+    // Переполнение проверяется явно, без исключений Math.*Exact
+    private boolean evaluateIntegerRPN(RpnProgram program, long[] stack) {
+        String[] operators = program.operators;
+        int size = 0;
+
+        for (int i = 0; i < operators.length; i++) {
+            if (operators[i] == null) {
+                stack[size++] = program.integers[i];
+                continue;
+            }
+            if (size < 2) {
+                return false;
+            }
+            long b = stack[--size];
+            long a = stack[size - 1];
+            long result;
+            switch (operators[i]) {
+                case "+":
+                    result = a + b;
+                    // Переполнение - знак суммы отличается от знаков обоих слагаемых
+                    if (((a ^ result) & (b ^ result)) < 0) return false;
+                    break;
+                case "-":
+                    result = a - b;
+                    if (((a ^ b) & (a ^ result)) < 0) return false;
+                    break;
+                case "*":
+                    if (multiplyOverflows(a, b)) return false;
+                    result = a * b;
+                    break;
+                case "//":
+                    if (b == 0 || (a == Long.MIN_VALUE && b == -1)) return false;
+                    result = a / b;
+                    break;
+                case "^":
+                    if (b < 0) return false;
+                    if (a == 0 || a == 1) {
+                        result = b == 0 ? 1 : a;
+                    } else if (a == -1) {
+                        result = b % 2 == 0 ? 1 : -1;
+                    } else {
+                        // |a| >= 2: переполнение наступит не позже чем через 63 умножения
+                        result = 1;
+                        for (long k = 0; k < b; k++) {
+                            if (multiplyOverflows(result, a)) return false;
+                            result *= a;
+                        }
+                    }
+                    break;
+                default:
+                    return false;
+            }
+            stack[size - 1] = result;
+        }
+
+        return size == 1;
+    }
+
+    // NOT_EXACT, если токен не целое число или не помещается в long
+    private long parseInteger(String token) {
+        boolean negative = token.startsWith("-");
+        int i = negative ? 1 : 0;
+        if (i == token.length()) {
+            return NOT_EXACT;
+        }
+        long value = 0;
+        for (; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c < '0' || c > '9' || value > (Long.MAX_VALUE - (c - '0')) / 10) {
+                return NOT_EXACT;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    // Старшая половина 128-битного произведения должна совпадать со знаком младшей
+    private static boolean multiplyOverflows(long a, long b) {
+        return Math.multiplyHigh(a, b) != (a * b) >> 63;
     }
 
     private boolean isOperator(char c) {
         return c == '+' || c == '-' || c == '*' || c == '/' || c == '^';
     }
 
+    private String operatorName(char c) {
+        switch (c) {
+            case '+':
+                return "+";
+            case '-':
+                return "-";
+            case '*':
+                return "*";
+            case '/':
+                return "/";
+            default:
+                return "^";
+        }
+    }
+
     private boolean isOperator(String op) {
         return op.equals("+") || op.equals("-") || op.equals("*") ||
                 op.equals("/") || op.equals("^") || op.equals("//");
     }
 
+    // Проверка без исключений: разбор выдает только числа вида [-]цифры[.цифры],
+    // поэтому достаточно посимвольной проверки вместо пробного Double.parseDouble
     private boolean isNumeric(String str) {
-        try {
-            Double.parseDouble(str);
-            return true;
-        } catch (NumberFormatException e) {
-            return false;
+        int i = str.startsWith("-") ? 1 : 0;
+        boolean digits = false;
+        boolean point = false;
+        for (; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits = true;
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                return false;
+            }
         }
+        return digits;
     }
 
     private int getPrecedence(String op) {
@@ -159,7 +342,9 @@ public class CalculatorModel {
                 return Math.pow(a, b);
             case "//":
                 if (b == 0) throw new ArithmeticException("Division by zero");
-                return (int)(a / b);
+                // Отбрасывание дробной части без приведения к int, которое переполнялось после 2^31
+                double quotient = a / b;
+                return quotient < 0 ? Math.ceil(quotient) : Math.floor(quotient);
             default:
                 throw new IllegalArgumentException("Unknown operator: " + op);
         }
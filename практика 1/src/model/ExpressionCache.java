@@ -0,0 +1,68 @@
+package model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+public class ExpressionCache<V> {
+    private final int capacity;
+    private final LinkedHashMap<String, V> entries;
+    private long hits;
+    private long misses;
+
+    public ExpressionCache(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Cache capacity cannot be negative");
+        }
+        this.capacity = capacity;
+        // accessOrder = true: вытесняется давно не использованное выражение (LRU)
+        this.entries = new LinkedHashMap<String, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > ExpressionCache.this.capacity;
+            }
+        };
+    }
+
+    public V get(String expression, Function<String, V> compiler) {
+        synchronized (this) {
+            V cached = entries.get(expression);
+            if (cached != null) {
+                hits++;
+                return cached;
+            }
+            misses++;
+        }
+
+        // Компиляция идет вне блокировки: ошибки разбора не попадают в кэш
+        V compiled = compiler.apply(expression);
+        if (capacity > 0) {
+            synchronized (this) {
+                entries.put(expression, compiled);
+            }
+        }
+        return compiled;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        hits = 0;
+        misses = 0;
+    }
+}
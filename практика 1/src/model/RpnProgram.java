@@ -0,0 +1,26 @@
+package model;
+
+// Выражение в обратной польской записи, разобранное один раз при компиляции:
+// числа уже переведены в double (и в long, если выражение целочисленное).
+public final class RpnProgram {
+    // Оператор в позиции i или null, если там число
+    final String[] operators;
+    final double[] values;
+    // Точные значения чисел; не null, только если выражение целочисленное:
+    // все числа целые и помещаются в long, деления "/" нет
+    final long[] integers;
+
+    RpnProgram(String[] operators, double[] values, long[] integers) {
+        this.operators = operators;
+        this.values = values;
+        this.integers = integers;
+    }
+
+    public boolean isInteger() {
+        return integers != null;
+    }
+
+    public int size() {
+        return operators.length;
+    }
+}
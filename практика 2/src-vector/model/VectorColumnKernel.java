@@ -0,0 +1,100 @@
+package model;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// Операции над блоками на Vector API: за одну итерацию обрабатывается SPECIES.length() строк.
+// Лежит в отдельном каталоге исходников src-vector: только его компиляция требует флага
+// --add-modules jdk.incubator.vector, основной src собирается без флагов. Если класса нет
+// в classpath или модуль не подключен при запуске, ColumnKernel.load() возвращает ScalarColumnKernel.
+// Каждая операция - отдельный цикл с константным оператором: иначе JIT не заменит
+// вызовы Vector API на SIMD-инструкции.
+final class VectorColumnKernel implements ColumnKernel {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public void add(double[] a, int aOffset, double[] b, int bOffset, double[] result, int length) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, aOffset + i)
+                    .add(DoubleVector.fromArray(SPECIES, b, bOffset + i))
+                    .intoArray(result, i);
+        }
+        for (; i < length; i++) {
+            result[i] = a[aOffset + i] + b[bOffset + i];
+        }
+    }
+
+    @Override
+    public void subtract(double[] a, int aOffset, double[] b, int bOffset, double[] result, int length) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, aOffset + i)
+                    .sub(DoubleVector.fromArray(SPECIES, b, bOffset + i))
+                    .intoArray(result, i);
+        }
+        for (; i < length; i++) {
+            result[i] = a[aOffset + i] - b[bOffset + i];
+        }
+    }
+
+    @Override
+    public void multiply(double[] a, int aOffset, double[] b, int bOffset, double[] result, int length) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, aOffset + i)
+                    .mul(DoubleVector.fromArray(SPECIES, b, bOffset + i))
+                    .intoArray(result, i);
+        }
+        for (; i < length; i++) {
+            result[i] = a[aOffset + i] * b[bOffset + i];
+        }
+    }
+
+    @Override
+    public void divide(double[] a, int aOffset, double[] b, int bOffset, double[] result, int length) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, aOffset + i)
+                    .div(DoubleVector.fromArray(SPECIES, b, bOffset + i))
+                    .intoArray(result, i);
+        }
+        for (; i < length; i++) {
+            result[i] = a[aOffset + i] / b[bOffset + i];
+        }
+    }
+
+    @Override
+    public void negate(double[] a, int aOffset, double[] result, int length) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, aOffset + i).neg().intoArray(result, i);
+        }
+        for (; i < length; i++) {
+            result[i] = -a[aOffset + i];
+        }
+    }
+
+    @Override
+    public boolean containsZero(double[] a, int offset, int length) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            // Сравнение по IEEE: -0.0 тоже считается нулем, NaN - нет, как в интерпретаторе
+            if (DoubleVector.fromArray(SPECIES, a, offset + i).compare(VectorOperators.EQ, 0).anyTrue()) {
+                return true;
+            }
+        }
+        for (; i < length; i++) {
+            if (a[offset + i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isVectorized() {
+        return true;
+    }
+}
@@ -1,13 +1,117 @@
 import controller.CalculatorController;
+import controller.MappedFileProcessor;
 import model.CalculatorModel;
+import server.CalculatorServer;
+import server.LoadGenerator;
 import view.CalculatorView;
+import view.PipeView;
+
+import javax.management.JMException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public class Main {
+    private static final String DEFAULT_PORT = "7070";
+
     public static void main(String[] args) {
         CalculatorModel model = new CalculatorModel();
+        // При -Dcalculator.stats=true статистика доступна по JMX (jconsole и т.п.)
+        if (model.getStats().isEnabled()) {
+            try {
+                model.getStats().registerMBean("calculator");
+            } catch (JMException e) {
+                System.err.println("Error: " + e.getMessage());
+            }
+        }
+
+        // --file <вход> [--out <выход>]: пакетная обработка файла с выражениями
+        String inputFile = getOption(args, "--file", null);
+        if (inputFile != null) {
+            Path output = Paths.get(getOption(args, "--out", inputFile + ".out"));
+            try {
+                new MappedFileProcessor(model).process(Paths.get(inputFile), output);
+            } catch (IOException e) {
+                System.err.println("Error: " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+
+        // --pipe [--flush-every N] [--workers N]: чтение выражений из stdin без подсказок;
+        // с --workers чтение, вычисление в N потоках и вывод идут конвейером
+        if (hasFlag(args, "--pipe")) {
+            int flushInterval = Integer.parseInt(getOption(args, "--flush-every", "0"));
+            int workers = Integer.parseInt(getOption(args, "--workers", "0"));
+            CalculatorController controller = new CalculatorController(model);
+            PipeView pipe = new PipeView(System.in, System.out, flushInterval);
+            if (workers > 0) {
+                controller.processPipelined(pipe, workers);
+            } else {
+                controller.processPipe(pipe);
+            }
+            return;
+        }
+
+        // --server [--port N]: сетевой режим на локальном адресе, протокол как у --pipe
+        if (hasFlag(args, "--server")) {
+            runServer(model, Integer.parseInt(getOption(args, "--port", DEFAULT_PORT)));
+            return;
+        }
+
+        // --load [--host H] [--port N] [--connections C] [--requests R] [--pipeline D]:
+        // нагрузочный клиент для запущенного сервера
+        if (hasFlag(args, "--load")) {
+            LoadGenerator generator = new LoadGenerator(getOption(args, "--host", "localhost"),
+                    Integer.parseInt(getOption(args, "--port", DEFAULT_PORT)),
+                    Integer.parseInt(getOption(args, "--connections", "8")),
+                    Integer.parseInt(getOption(args, "--requests", "100000")),
+                    Integer.parseInt(getOption(args, "--pipeline", "32")));
+            try {
+                System.out.println(generator.run());
+            } catch (IOException e) {
+                System.err.println("Error: " + e.getMessage());
+                System.exit(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+
         CalculatorView view = new CalculatorView();
         CalculatorController controller = new CalculatorController(model, view);
 
         controller.process();
     }
+
+    private static void runServer(CalculatorModel model, int port) {
+        CalculatorServer server = new CalculatorServer(model, port);
+        try {
+            server.start();
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.println("Listening on port " + server.getPort() +
+                (server.isUsingVirtualThreads() ? " (virtual threads)" : ""));
+        try {
+            server.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean hasFlag(String[] args, String flag) {
+        for (String arg : args) {
+            if (arg.equals(flag)) return true;
+        }
+        return false;
+    }
+
+    private static String getOption(String[] args, String option, String defaultValue) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals(option)) return args[i + 1];
+        }
+        return defaultValue;
+    }
 }
@@ -1,9 +1,26 @@
 package controller;
 
+import model.CalculationResult;
 import model.CalculatorModel;
 import view.CalculatorView;
+import view.PipeView;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class CalculatorController {
+    // Число строк в пачке конвейерного режима
+    private static final int PIPELINE_BATCH = 256;
+    // Пачек в очереди на одного вычислителя: больше - лучше сглаживаются паузы ввода-вывода,
+    // меньше - меньше памяти под непрочитанные результаты
+    private static final int BATCHES_PER_WORKER = 4;
+    // Признак конца входных данных в очереди результатов
+    private static final CompletableFuture<CalculationResult[]> END_OF_INPUT =
+            CompletableFuture.completedFuture(null);
+
     private CalculatorModel model;
     private CalculatorView view;
 
@@ -12,6 +29,11 @@ public class CalculatorController {
         this.view = view;
     }
 
+    // Контроллер без консольного представления - для неинтерактивных режимов
+    public CalculatorController(CalculatorModel model) {
+        this(model, null);
+    }
+
     public void process() {
         while (true) {
             String input = view.getInput();
@@ -19,15 +41,136 @@ public class CalculatorController {
             if (input.equalsIgnoreCase("exit")) {
                 break;
             }
+            if (input.equalsIgnoreCase("stats")) {
+                view.displayMessage(model.getStats().getSummary());
+                continue;
+            }
 
-            try {
-                double result = model.calculate(input);
-                view.displayResult(result);
-            } catch (Exception e) {
-                view.displayError(e.getMessage());
+            CalculationResult result = model.tryCalculate(input);
+            if (result.isSuccess()) {
+                view.displayResult(result.getValue());
+            } else {
+                view.displayError(result.getError());
             }
         }
 
         view.close();
     }
+
+    // Потоковый режим: каждая строка входа - выражение, каждая строка выхода - результат или ошибка
+    public void processPipe(PipeView pipe) {
+        String input;
+        while ((input = pipe.readLine()) != null) {
+            // Некорректные строки не бросают исключений: ошибка приходит в результате
+            CalculationResult result = model.tryCalculate(input);
+            if (result.isSuccess()) {
+                pipe.displayResult(result.getValue());
+            } else {
+                pipe.displayError(result.getError());
+            }
+        }
+
+        pipe.close();
+    }
+
+    // Конвейерный потоковый режим: чтение, вычисление и запись идут одновременно.
+    // Текущий поток читает строки пачками и отдает пачки пулу из workers потоков,
+    // отдельный поток записывает результаты пачек в исходном порядке. Очередь между ними
+    // ограничена: если запись не успевает, чтение останавливается до освобождения места.
+    // Неполная пачка отправляется сразу, когда на входе нет готовых строк, поэтому режим
+    // подходит и для интерактивного клиента.
+    public void processPipelined(PipeView pipe, int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Worker count must be positive");
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        BlockingQueue<CompletableFuture<CalculationResult[]>> pending =
+                new ArrayBlockingQueue<>(workers * BATCHES_PER_WORKER);
+        PipeWriter writer = new PipeWriter(pipe, pending);
+        Thread writerThread = new Thread(writer, "pipe-writer");
+        writerThread.start();
+
+        boolean finished = false;
+        try {
+            String[] batch = new String[PIPELINE_BATCH];
+            int size = 0;
+            String input;
+            while (writer.failure == null && (input = pipe.readLine()) != null) {
+                batch[size++] = input;
+                if (size == batch.length || !pipe.isInputReady()) {
+                    String[] lines = batch;
+                    int count = size;
+                    pending.put(CompletableFuture.supplyAsync(() -> calculateBatch(lines, count), pool));
+                    batch = new String[PIPELINE_BATCH];
+                    size = 0;
+                }
+            }
+            pending.put(END_OF_INPUT);
+            writerThread.join();
+            finished = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Ошибка чтения или прерывание: поток записи не дождется конца входных данных
+            if (!finished) {
+                writerThread.interrupt();
+            }
+            pool.shutdownNow();
+        }
+
+        if (writer.failure != null) {
+            throw writer.failure;
+        }
+        pipe.close();
+    }
+
+    private CalculationResult[] calculateBatch(String[] lines, int count) {
+        CalculationResult[] results = new CalculationResult[count];
+        for (int i = 0; i < count; i++) {
+            results[i] = model.tryCalculate(lines[i]);
+        }
+        return results;
+    }
+
+    // Стадия записи конвейерного режима
+    private static final class PipeWriter implements Runnable {
+        private final PipeView pipe;
+        private final BlockingQueue<CompletableFuture<CalculationResult[]>> pending;
+        private volatile RuntimeException failure;
+
+        PipeWriter(PipeView pipe, BlockingQueue<CompletableFuture<CalculationResult[]>> pending) {
+            this.pipe = pipe;
+            this.pending = pending;
+        }
+
+        @Override
+        public void run() {
+            try {
+                CompletableFuture<CalculationResult[]> next;
+                while ((next = pending.take()) != END_OF_INPUT) {
+                    if (failure != null) {
+                        // После ошибки очередь только освобождается, чтобы не блокировать чтение
+                        continue;
+                    }
+                    try {
+                        for (CalculationResult result : next.join()) {
+                            if (result.isSuccess()) {
+                                pipe.displayResult(result.getValue());
+                            } else {
+                                pipe.displayError(result.getError());
+                            }
+                        }
+                        // Клиент ждет ответа: больше результатов пока нет
+                        if (pipe.isFlushWhenIdle() && pending.isEmpty()) {
+                            pipe.flush();
+                        }
+                    } catch (RuntimeException e) {
+                        failure = e;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
 }
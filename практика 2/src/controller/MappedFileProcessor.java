@@ -0,0 +1,147 @@
+package controller;
+
+import model.CalculationResult;
+import model.CalculatorModel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Пакетная обработка больших файлов выражений: входной файл отображается в память,
+// делится на фрагменты по границам строк, фрагменты вычисляются параллельно,
+// а результаты пишутся в выходной файл в исходном порядке.
+public class MappedFileProcessor {
+    private static final int DEFAULT_CHUNK_SIZE = 8 << 20;
+
+    private final CalculatorModel model;
+    private final int chunkSize;
+    private final int parallelism;
+
+    public MappedFileProcessor(CalculatorModel model) {
+        this(model, DEFAULT_CHUNK_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    public MappedFileProcessor(CalculatorModel model, int chunkSize, int parallelism) {
+        if (chunkSize <= 0 || parallelism <= 0) {
+            throw new IllegalArgumentException("Chunk size and parallelism must be positive");
+        }
+        this.model = model;
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+    }
+
+    public void process(Path input, Path output) throws IOException {
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism);
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long position = 0;
+
+            // Число фрагментов в работе ограничено, чтобы память не росла с размером файла
+            Deque<Future<ByteBuffer>> pending = new ArrayDeque<>();
+            while (position < size) {
+                MappedByteBuffer chunk = mapChunk(in, position, size);
+                position += chunk.limit();
+                pending.addLast(workers.submit(() -> evaluateChunk(chunk)));
+
+                if (pending.size() >= parallelism * 2) {
+                    write(out, pending.removeFirst());
+                }
+            }
+            while (!pending.isEmpty()) {
+                write(out, pending.removeFirst());
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    // Отображает фрагмент, заканчивающийся на конце строки (или на конце файла)
+    private MappedByteBuffer mapChunk(FileChannel in, long position, long size) throws IOException {
+        long length = Math.min(chunkSize, size - position);
+        while (true) {
+            MappedByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, position, length);
+            if (position + length == size) {
+                return buffer;
+            }
+            for (int i = (int) length - 1; i >= 0; i--) {
+                if (buffer.get(i) == '\n') {
+                    buffer.limit(i + 1);
+                    return buffer;
+                }
+            }
+            // Строка длиннее фрагмента - расширяем отображение
+            if (length == Integer.MAX_VALUE) {
+                throw new IOException("Line at offset " + position + " is too long");
+            }
+            length = Math.min(Math.min(length * 2, Integer.MAX_VALUE), size - position);
+        }
+    }
+
+    private ByteBuffer evaluateChunk(ByteBuffer chunk) {
+        StringBuilder results = new StringBuilder(chunk.limit());
+        byte[] line = new byte[256];
+        int lineLength = 0;
+
+        for (int i = 0; i < chunk.limit(); i++) {
+            byte b = chunk.get(i);
+            if (b == '\n') {
+                evaluateLine(line, lineLength, results);
+                lineLength = 0;
+                continue;
+            }
+            if (lineLength == line.length) {
+                line = Arrays.copyOf(line, lineLength * 2);
+            }
+            line[lineLength++] = b;
+        }
+        if (lineLength > 0) {
+            evaluateLine(line, lineLength, results);
+        }
+
+        return ByteBuffer.wrap(results.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void evaluateLine(byte[] line, int length, StringBuilder results) {
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+
+        String expression = new String(line, 0, length, StandardCharsets.UTF_8);
+        CalculationResult result = model.tryCalculate(expression);
+        if (result.isSuccess()) {
+            results.append(result.getValue());
+        } else {
+            results.append("Error: ").append(result.getError());
+        }
+        results.append('\n');
+    }
+
+    private static void write(FileChannel out, Future<ByteBuffer> result) throws IOException {
+        ByteBuffer buffer;
+        try {
+            buffer = result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for results", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Chunk evaluation failed", e.getCause());
+        }
+
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+}
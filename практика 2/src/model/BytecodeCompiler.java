@@ -0,0 +1,325 @@
+package model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.Map;
+
+// Компиляция RpnProgram в скрытый класс, реализующий CompiledFormula.
+// Метод evaluate - линейная последовательность операций над double без ветвлений
+// (поэтому StackMapTable не нужна): JIT может встроить его целиком.
+// Операции с проверками (деление, факториал, log) вызывают те же статические методы,
+// что и интерпретатор, поэтому результаты совпадают побитово.
+final class BytecodeCompiler {
+    private static final int MAX_CODE_LENGTH = 65535;
+    private static final int MAX_VARIABLE_INDEX = Short.MAX_VALUE;
+
+    private static final String CLASS_NAME = "model/GeneratedFormula";
+    private static final String EVALUATOR = "model/RpnEvaluator";
+    private static final String KERNEL = "model/MathKernel";
+
+    // Байт-коды JVM, используемые генератором
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int DCONST_0 = 0x0e;
+    private static final int DCONST_1 = 0x0f;
+    private static final int LDC2_W = 0x14;
+    private static final int DLOAD = 0x18;
+    private static final int DALOAD = 0x31;
+    private static final int DSTORE = 0x39;
+    private static final int DUP2 = 0x5c;
+    private static final int DADD = 0x63;
+    private static final int DSUB = 0x67;
+    private static final int DMUL = 0x6b;
+    private static final int DNEG = 0x77;
+    private static final int DRETURN = 0xaf;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int WIDE = 0xc4;
+
+    private final ConstantPool pool = new ConstantPool();
+    private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+
+    private BytecodeCompiler() {
+    }
+
+    // null - программа не подходит для компиляции (слишком большая или с неподдерживаемыми операциями)
+    static CompiledFormula compile(RpnProgram program) {
+        try {
+            byte[] classFile = new BytecodeCompiler().generate(program);
+            if (classFile == null) {
+                return null;
+            }
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+            return (CompiledFormula) lookup.findConstructor(lookup.lookupClass(),
+                    MethodType.methodType(void.class)).invoke();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot load generated formula", e);
+        }
+    }
+
+    private byte[] generate(RpnProgram program) throws IOException {
+        int thisClass = pool.classRef(CLASS_NAME);
+        int superClass = pool.classRef("java/lang/Object");
+        int formulaInterface = pool.classRef("model/CompiledFormula");
+        int objectInit = pool.methodRef("java/lang/Object", "<init>", "()V");
+        int codeAttribute = pool.utf8("Code");
+        int initName = pool.utf8("<init>");
+        int initDescriptor = pool.utf8("()V");
+        int evaluateName = pool.utf8("evaluate");
+        int evaluateDescriptor = pool.utf8("([D)D");
+
+        if (!emitBody(program)) {
+            return null;
+        }
+        byte[] body = code.toByteArray();
+        if (body.length > MAX_CODE_LENGTH || pool.size() > 0xffff) {
+            return null;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(52);
+        pool.writeTo(out);
+        out.writeShort(0x0010 | 0x0020); // ACC_FINAL | ACC_SUPER
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(1);
+        out.writeShort(formulaInterface);
+        out.writeShort(0); // поля
+        out.writeShort(2); // методы
+
+        // public <init>() { super(); }
+        byte[] init = {(byte) ALOAD_0, (byte) INVOKESPECIAL,
+                (byte) (objectInit >> 8), (byte) objectInit, (byte) RETURN};
+        writeMethod(out, initName, initDescriptor, codeAttribute, 1, 1, init);
+
+        // public double evaluate(double[] variables): слоты 0 - this, 1 - массив, далее временные ячейки
+        int maxStack = program.getMaxStackDepth() * 2 + 2;
+        int maxLocals = 2 + program.getTempCount() * 2;
+        if (maxStack > 0xffff || maxLocals > 0xffff) {
+            return null;
+        }
+        writeMethod(out, evaluateName, evaluateDescriptor, codeAttribute, maxStack, maxLocals, body);
+
+        out.writeShort(0); // атрибуты класса
+        return bytes.toByteArray();
+    }
+
+    private boolean emitBody(RpnProgram program) {
+        double[] constants = program.constants();
+        for (int instruction : program.code()) {
+            int operand = OpCode.operand(instruction);
+            switch (OpCode.opcode(instruction)) {
+                case OpCode.CONST:
+                    emitConstant(constants[operand]);
+                    break;
+                case OpCode.LOAD:
+                    if (operand > MAX_VARIABLE_INDEX) return false;
+                    code.write(ALOAD_1);
+                    emitInt(operand);
+                    code.write(DALOAD);
+                    break;
+                case OpCode.TEE:
+                    code.write(DUP2);
+                    emitLocal(DSTORE, 2 + operand * 2);
+                    break;
+                case OpCode.LOAD_TEMP:
+                    emitLocal(DLOAD, 2 + operand * 2);
+                    break;
+                case OpCode.ADD:
+                    code.write(DADD);
+                    break;
+                case OpCode.SUB:
+                    code.write(DSUB);
+                    break;
+                case OpCode.MUL:
+                    code.write(DMUL);
+                    break;
+                case OpCode.NEG:
+                    code.write(DNEG);
+                    break;
+                case OpCode.DIV:
+                    emitInvoke(EVALUATOR, "divide", "(DD)D");
+                    break;
+                case OpCode.IDIV:
+                    emitInvoke(EVALUATOR, "integerDivide", "(DD)D");
+                    break;
+                case OpCode.POW:
+                    emitInvoke("java/lang/Math", "pow", "(DD)D");
+                    break;
+                case OpCode.EXP:
+                    emitInvoke("java/lang/Math", "exp", "(D)D");
+                    break;
+                case OpCode.LOG:
+                    emitInvoke(KERNEL, "log2", "(D)D");
+                    break;
+                case OpCode.FACT:
+                    emitInvoke(KERNEL, "factorial", "(D)D");
+                    break;
+                default:
+                    return false;
+            }
+            if (code.size() > MAX_CODE_LENGTH) {
+                return false;
+            }
+        }
+        code.write(DRETURN);
+        return true;
+    }
+
+    private void emitConstant(double value) {
+        if (Double.doubleToRawLongBits(value) == 0L) {
+            code.write(DCONST_0);
+        } else if (value == 1.0) {
+            code.write(DCONST_1);
+        } else {
+            emitU2(LDC2_W, pool.doubleConstant(value));
+        }
+    }
+
+    private void emitInt(int value) {
+        if (value <= 5) {
+            code.write(ICONST_0 + value);
+        } else if (value <= Byte.MAX_VALUE) {
+            code.write(BIPUSH);
+            code.write(value);
+        } else {
+            emitU2(SIPUSH, value);
+        }
+    }
+
+    private void emitLocal(int opcode, int index) {
+        if (index <= 0xff) {
+            code.write(opcode);
+            code.write(index);
+        } else {
+            code.write(WIDE);
+            emitU2(opcode, index);
+        }
+    }
+
+    private void emitInvoke(String owner, String name, String descriptor) {
+        emitU2(INVOKESTATIC, pool.methodRef(owner, name, descriptor));
+    }
+
+    private void emitU2(int opcode, int value) {
+        code.write(opcode);
+        code.write(value >> 8);
+        code.write(value);
+    }
+
+    private static void writeMethod(DataOutputStream out, int name, int descriptor, int codeAttribute,
+                                    int maxStack, int maxLocals, byte[] body) throws IOException {
+        out.writeShort(0x0001); // ACC_PUBLIC
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(codeAttribute);
+        out.writeInt(2 + 2 + 4 + body.length + 2 + 2);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(body.length);
+        out.write(body);
+        out.writeShort(0); // таблица исключений
+        out.writeShort(0); // атрибуты кода
+    }
+
+    // Пул констант class-файла с повторным использованием одинаковых записей
+    private static final class ConstantPool {
+        private static final int UTF8 = 1;
+        private static final int DOUBLE = 6;
+        private static final int CLASS = 7;
+        private static final int METHOD_REF = 10;
+        private static final int NAME_AND_TYPE = 12;
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        private final Map<String, Integer> indices = new HashMap<>();
+        private int next = 1;
+
+        int size() {
+            return next;
+        }
+
+        int utf8(String value) {
+            Integer index = indices.get("U" + value);
+            if (index != null) return index;
+            try {
+                out.writeByte(UTF8);
+                out.writeUTF(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return register("U" + value, 1);
+        }
+
+        int classRef(String name) {
+            Integer index = indices.get("C" + name);
+            if (index != null) return index;
+            int nameIndex = utf8(name);
+            write(CLASS, nameIndex);
+            return register("C" + name, 1);
+        }
+
+        int methodRef(String owner, String name, String descriptor) {
+            String key = "M" + owner + "." + name + descriptor;
+            Integer index = indices.get(key);
+            if (index != null) return index;
+            int ownerIndex = classRef(owner);
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            write(NAME_AND_TYPE, nameIndex, descriptorIndex);
+            int nameAndType = register("N" + key, 1);
+            write(METHOD_REF, ownerIndex, nameAndType);
+            return register(key, 1);
+        }
+
+        int doubleConstant(double value) {
+            String key = "D" + Double.doubleToRawLongBits(value);
+            Integer index = indices.get(key);
+            if (index != null) return index;
+            try {
+                out.writeByte(DOUBLE);
+                out.writeDouble(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return register(key, 2); // double занимает две ячейки пула
+        }
+
+        void writeTo(DataOutputStream target) throws IOException {
+            target.writeShort(next);
+            bytes.writeTo(target);
+        }
+
+        private void write(int tag, int... references) {
+            try {
+                out.writeByte(tag);
+                for (int reference : references) {
+                    out.writeShort(reference);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private int register(String key, int slots) {
+            int index = next;
+            next += slots;
+            indices.put(key, index);
+            return index;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package model;
+
+// Результат вычисления одного выражения: значение либо код, позиция и текст ошибки
+public final class CalculationResult {
+    private final double value;
+    private final ErrorCode errorCode;
+    private final int position;
+    private final String error;
+
+    private CalculationResult(double value, ErrorCode errorCode, int position, String error) {
+        this.value = value;
+        this.errorCode = errorCode;
+        this.position = position;
+        this.error = error;
+    }
+
+    public static CalculationResult success(double value) {
+        return new CalculationResult(value, null, -1, null);
+    }
+
+    // position - позиция ошибки в выражении или -1, если ошибка возникла при вычислении
+    public static CalculationResult failure(ErrorCode errorCode, int position, String error) {
+        return new CalculationResult(Double.NaN, errorCode, position, error);
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    public double getValue() {
+        if (error != null) {
+            throw new IllegalStateException("No value: " + error);
+        }
+        return value;
+    }
+
+    public ErrorCode getErrorCode() {
+        return errorCode;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return isSuccess() ? String.valueOf(value) : "Error: " + error;
+    }
+}
@@ -1,231 +1,289 @@
 package model;
 
-import java.util.Stack;
-import java.util.regex.Pattern;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class CalculatorModel {
+    private static final int DEFAULT_CACHE_CAPACITY = 1024;
+    // Размер порции выражений, которую задача пакета вычисляет без дальнейшего деления
+    private static final int BATCH_GRANULARITY = 256;
+
+    // Компилятор переиспользует буферы, поэтому у каждого потока он свой
+    private static final ThreadLocal<ExpressionCompiler> COMPILERS =
+            ThreadLocal.withInitial(ExpressionCompiler::new);
+
+    // Число вычислений, после которого формула с переменными компилируется в байт-код
+    private static final int DEFAULT_COMPILATION_THRESHOLD = 10_000;
+
+    private final ExpressionCache<RpnProgram> cache;
+    private final OperatorRegistry operators = new OperatorRegistry();
+    private volatile int compilationThreshold = DEFAULT_COMPILATION_THRESHOLD;
+    private volatile int maxTerms = ExpressionCompiler.DEFAULT_MAX_TERMS;
+    private volatile boolean vectorized = true;
+    private final EngineStats stats;
+
+    public CalculatorModel() {
+        this(DEFAULT_CACHE_CAPACITY);
+    }
+
+    public CalculatorModel(int cacheCapacity) {
+        this.cache = new ExpressionCache<>(cacheCapacity);
+        this.stats = new EngineStats(cache);
+        // Новый оператор или функция меняет разбор уже скомпилированных выражений
+        operators.addChangeListener(cache::invalidate);
+    }
+
     public double calculate(String expression) throws IllegalArgumentException {
-        if (expression == null || expression.trim().isEmpty()) {
-            throw new IllegalArgumentException("Expression cannot be empty");
+        if (EngineStats.ENABLED) stats.countExpression();
+        try {
+            if (expression == null || expression.trim().isEmpty()) {
+                throw new IllegalArgumentException("Expression cannot be empty");
+            }
+
+            // Повторяющиеся выражения берутся из кэша и сразу вычисляются
+            RpnProgram program = cache.get(expression, this::compile);
+            return evaluate(program);
+        } catch (RuntimeException e) {
+            if (EngineStats.ENABLED) stats.countError();
+            throw e;
         }
+    }
+
+    // Точный результат: Long или BigInteger для целочисленных выражений
+    // (только целые числа и операции + - * // ^ !), иначе Double
+    public Number calculateExact(String expression) throws IllegalArgumentException {
+        if (EngineStats.ENABLED) stats.countExpression();
+        try {
+            if (expression == null || expression.trim().isEmpty()) {
+                throw new IllegalArgumentException("Expression cannot be empty");
+            }
 
-        // Упрощенная проверка начала и конца выражения
-        if (!Pattern.matches("^[-+\\d(]?.*[\\d)!]$", expression)) {
-            throw new IllegalArgumentException("Expression must start and end with valid terms");
+            RpnProgram program = cache.get(expression, this::compile);
+            if (program.getExactValue() != null) {
+                return program.getExactValue();
+            }
+            return evaluate(program);
+        } catch (RuntimeException e) {
+            if (EngineStats.ENABLED) stats.countError();
+            throw e;
         }
+    }
 
-        // Проверка скобок
-        if (!checkParentheses(expression)) {
-            throw new IllegalArgumentException("Unbalanced parentheses");
+    // Вычисление без исключений: ошибка возвращается как код и позиция в CalculationResult.
+    // Подходит для входных данных с большой долей некорректных выражений
+    public CalculationResult tryCalculate(String expression) {
+        if (EngineStats.ENABLED) stats.countExpression();
+        if (expression == null || expression.trim().isEmpty()) {
+            if (EngineStats.ENABLED) stats.countError();
+            return CalculationResult.failure(ErrorCode.EMPTY_EXPRESSION, 0, "Expression cannot be empty");
         }
 
-        // Преобразование в обратную польскую нотацию
-        String rpn = convertToRPN(expression);
+        RpnProgram program = cache.get(expression, this::tryCompile);
+        if (program == null) {
+            if (EngineStats.ENABLED) stats.countError();
+            // Ошибка разбора осталась в компиляторе текущего потока
+            ExpressionCompiler compiler = COMPILERS.get();
+            return CalculationResult.failure(compiler.getErrorCode(), compiler.getErrorPosition(),
+                    compiler.getErrorMessage());
+        }
 
-        // Вычисление выражения
-        return evaluateRPN(rpn);
+        long started = EngineStats.now();
+        long allocated = EngineStats.allocatedBytes();
+        RpnEvaluator evaluator = RpnEvaluator.local();
+        double value = evaluator.tryEvaluate(program);
+        if (EngineStats.ENABLED) stats.record(EngineStats.Stage.EVALUATE, started, allocated);
+        if (evaluator.getError() != null) {
+            if (EngineStats.ENABLED) stats.countError();
+            return CalculationResult.failure(evaluator.getError(), -1, evaluator.getErrorMessage());
+        }
+        return CalculationResult.success(value);
     }
 
-
-    private boolean checkParentheses(String expression) {
-        int balance = 0;
-        for (char c : expression.toCharArray()) {
-            if (c == '(') balance++;
-            if (c == ')') balance--;
-            if (balance < 0) return false;
+    // Вычисление выражения, которое читается из потока без загрузки в память целиком.
+    // Такие выражения обычно однократные и очень длинные, поэтому кэш не используется.
+    public double calculate(Reader expression) throws IOException {
+        if (EngineStats.ENABLED) stats.countExpression();
+        try {
+            long started = EngineStats.now();
+            long allocated = EngineStats.allocatedBytes();
+            RpnProgram program = compiler().compile(expression, null, false);
+            if (EngineStats.ENABLED) stats.record(EngineStats.Stage.PARSE, started, allocated);
+            return evaluate(optimize(program));
+        } catch (IOException | RuntimeException e) {
+            if (EngineStats.ENABLED) stats.countError();
+            throw e;
         }
-        return balance == 0;
     }
 
-    private String convertToRPN(String expression) {
-        StringBuilder output = new StringBuilder();
-        Stack<String> stack = new Stack<>();
+    // Пакетное вычисление: выражения считаются параллельно в ForkJoinPool,
+    // результаты возвращаются в исходном порядке, ошибки - для каждого выражения отдельно
+    public List<CalculationResult> calculateAll(List<String> expressions) {
+        return calculateAll(expressions, ForkJoinPool.commonPool());
+    }
 
-        int i = 0;
-        while (i < expression.length()) {
-            char c = expression.charAt(i);
+    public List<CalculationResult> calculateAll(Stream<String> expressions) {
+        return calculateAll(expressions.collect(Collectors.toList()));
+    }
 
-            // Обработка чисел
-            if (Character.isDigit(c) || c == '.') {
-                StringBuilder num = new StringBuilder();
-                while (i < expression.length() &&
-                        (Character.isDigit(expression.charAt(i)) || expression.charAt(i) == '.')) {
-                    num.append(expression.charAt(i++));
-                }
-                output.append(num).append(" ");
-                continue;
-            }
+    public List<CalculationResult> calculateAll(List<String> expressions, ForkJoinPool pool) {
+        String[] input = expressions.toArray(new String[0]);
+        CalculationResult[] results = new CalculationResult[input.length];
+        if (input.length > 0) {
+            pool.invoke(new BatchTask(input, results, 0, input.length));
+        }
+        return Arrays.asList(results);
+    }
 
-            // Обработка унарного минуса
-            if (c == '-' && (i == 0 || expression.charAt(i-1) == '(' ||
-                    isOperator(expression.charAt(i-1)))) {
-                output.append("-1 ");
-                stack.push("*");
-                i++;
-                continue;
-            }
+    // Компиляция формулы с переменными для многократного вычисления.
+    // Если переменные не перечислены, они берутся в порядке первого появления в формуле.
+    public CompiledExpression compile(String formula, String... variables) {
+        if (formula == null || formula.trim().isEmpty()) {
+            throw new IllegalArgumentException("Expression cannot be empty");
+        }
 
-            // Обработка функций
-            if (i + 3 <= expression.length()) {
-                String func = expression.substring(i, i+3);
-                if (func.equals("exp") || func.equals("log")) {
-                    stack.push(func);
-                    i += 3;
-                    continue;
-                }
+        List<String> names = new ArrayList<>();
+        for (String variable : variables) {
+            if (!ExpressionCompiler.isIdentifier(variable) || operators.isFunction(variable)) {
+                throw new IllegalArgumentException("Invalid variable name: " + variable);
             }
-
-            // Обработка операторов
-            if (isOperator(c)) {
-                String op = String.valueOf(c);
-                // Особый случай для **
-                if (c == '*' && i+1 < expression.length() && expression.charAt(i+1) == '*') {
-                    op = "**";
-                    i++;
-                }
-
-                while (!stack.isEmpty() &&
-                        getPrecedence(stack.peek()) >= getPrecedence(op) &&
-                        !stack.peek().equals("(")) {
-                    output.append(stack.pop()).append(" ");
-                }
-                stack.push(op);
-                i++;
-                continue;
+            if (names.contains(variable)) {
+                throw new IllegalArgumentException("Duplicate variable: " + variable);
             }
+            names.add(variable);
+        }
 
-            // Обработка скобок
-            if (c == '(') {
-                stack.push(String.valueOf(c));
-                i++;
-                continue;
-            }
+        RpnProgram program = ExpressionOptimizer.optimize(
+                compiler().compile(formula, names, variables.length == 0));
+        return new CompiledExpression(formula, names, program, compilationThreshold, vectorized);
+    }
 
-            if (c == ')') {
-                while (!stack.isEmpty() && !stack.peek().equals("(")) {
-                    output.append(stack.pop()).append(" ");
-                }
-                stack.pop(); // Удаляем "("
-                i++;
-                continue;
-            }
+    public int getCompilationThreshold() {
+        return compilationThreshold;
+    }
 
-            i++; // Пропускаем другие символы (пробелы и т.д.)
-        }
+    // 0 - компилировать в байт-код сразу, отрицательное значение - никогда
+    public void setCompilationThreshold(int compilationThreshold) {
+        this.compilationThreshold = compilationThreshold;
+    }
 
-        // Выталкиваем оставшиеся операторы
-        while (!stack.isEmpty()) {
-            output.append(stack.pop()).append(" ");
-        }
+    public boolean isVectorized() {
+        return vectorized;
+    }
 
-        return output.toString();
+    // Вычисление формул по столбцам блоками на Vector API; действует, только если
+    // приложение запущено с --add-modules jdk.incubator.vector (см. isVectorApiAvailable)
+    public void setVectorized(boolean vectorized) {
+        this.vectorized = vectorized;
     }
 
-    private double evaluateRPN(String rpn) {
-        Stack<Double> stack = new Stack<>();
-        String[] tokens = rpn.split("\\s+");
+    public static boolean isVectorApiAvailable() {
+        return ColumnEvaluator.isVectorized();
+    }
 
-        for (String token : tokens) {
-            if (token.isEmpty()) continue;
+    public int getMaxTerms() {
+        return maxTerms;
+    }
 
-            if (isNumeric(token)) {
-                stack.push(Double.parseDouble(token));
-            }
-            else if (isFunction(token)) {
-                double a = stack.pop();
-                stack.push(applyFunction(a, token));
-            }
-            else if (isOperator(token)) {
-                double b = stack.pop();
-                double a = stack.pop();
-                stack.push(applyOperator(a, b, token));
-            }
+    // Ограничение на число операндов в одном выражении (защита от слишком больших входных данных)
+    public void setMaxTerms(int maxTerms) {
+        if (maxTerms < 1) {
+            throw new IllegalArgumentException("Term limit must be positive");
         }
+        this.maxTerms = maxTerms;
+        cache.clear();
+    }
 
-        if (stack.size() != 1) {
-            throw new IllegalArgumentException("Invalid expression");
-        }
+    // Таблица операторов и функций модели; в нее можно добавлять свои функции и операторы
+    public OperatorRegistry getOperatorRegistry() {
+        return operators;
+    }
 
-        return stack.pop();
+    public ExpressionCache<RpnProgram> getCache() {
+        return cache;
     }
 
-    private boolean isOperator(char c) {
-        return c == '+' || c == '-' || c == '*' || c == '/' || c == '^' || c == '!';
+    // Статистика вычислений; собирается, только если включена при запуске (см. EngineStats)
+    public EngineStats getStats() {
+        return stats;
     }
 
-    private boolean isOperator(String op) {
-        return op.equals("+") || op.equals("-") || op.equals("*") ||
-                op.equals("/") || op.equals("^") || op.equals("**") || op.equals("!");
+    private RpnProgram compile(String expression) {
+        // Разбор, проверка скобок и преобразование в ОПЗ за один проход, затем оптимизация
+        long started = EngineStats.now();
+        long allocated = EngineStats.allocatedBytes();
+        RpnProgram program = compiler().compile(expression);
+        if (EngineStats.ENABLED) stats.record(EngineStats.Stage.PARSE, started, allocated);
+        return optimize(program);
     }
 
-    private boolean isFunction(String token) {
-        return token.equals("exp") || token.equals("log");
+    private RpnProgram tryCompile(String expression) {
+        long started = EngineStats.now();
+        long allocated = EngineStats.allocatedBytes();
+        RpnProgram program = compiler().tryCompile(expression);
+        if (EngineStats.ENABLED) stats.record(EngineStats.Stage.PARSE, started, allocated);
+        return program == null ? null : optimize(program);
     }
 
-    private boolean isNumeric(String str) {
-        return str.matches("-?\\d+(\\.\\d+)?");
+    private RpnProgram optimize(RpnProgram program) {
+        long started = EngineStats.now();
+        long allocated = EngineStats.allocatedBytes();
+        // Выражение из целых чисел вычисляется точно один раз при компиляции,
+        // в кэш попадает готовый результат
+        Number exact = IntegerEvaluator.evaluate(program);
+        RpnProgram optimized = exact != null ? RpnProgram.exact(exact) : ExpressionOptimizer.optimize(program);
+        if (EngineStats.ENABLED) stats.record(EngineStats.Stage.OPTIMIZE, started, allocated);
+        return optimized;
     }
 
-    private int getPrecedence(String op) {
-        switch (op) {
-            case "!":
-                return 5;
-            case "^":
-            case "**":
-                return 4;
-            case "exp":
-            case "log":
-                return 4;
-            case "*":
-            case "/":
-                return 3;
-            case "+":
-            case "-":
-                return 2;
-            default:
-                return 0;
-        }
+    private double evaluate(RpnProgram program) {
+        long started = EngineStats.now();
+        long allocated = EngineStats.allocatedBytes();
+        double value = RpnEvaluator.local().evaluate(program);
+        if (EngineStats.ENABLED) stats.record(EngineStats.Stage.EVALUATE, started, allocated);
+        return value;
     }
 
-    private double applyOperator(double a, double b, String op) {
-        switch (op) {
-            case "+":
-                return a + b;
-            case "-":
-                return a - b;
-            case "*":
-                return a * b;
-            case "/":
-                if (b == 0) throw new ArithmeticException("Division by zero");
-                return a / b;
-            case "^":
-            case "**":
-                return Math.pow(a, b);
-            case "!":
-                return factorial(b);
-            default:
-                throw new IllegalArgumentException("Unknown operator: " + op);
-        }
+    private ExpressionCompiler compiler() {
+        ExpressionCompiler compiler = COMPILERS.get();
+        compiler.setMaxTerms(maxTerms);
+        compiler.setOperatorRegistry(operators);
+        return compiler;
     }
 
-    private double applyFunction(double a, String func) {
-        switch (func) {
-            case "exp":
-                return Math.exp(a);
-            case "log":
-                return Math.log(a) / Math.log(2);
-            default:
-                throw new IllegalArgumentException("Unknown function: " + func);
+    private class BatchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final String[] expressions;
+        private final CalculationResult[] results;
+        private final int from;
+        private final int to;
+
+        BatchTask(String[] expressions, CalculationResult[] results, int from, int to) {
+            this.expressions = expressions;
+            this.results = results;
+            this.from = from;
+            this.to = to;
         }
-    }
 
-    private double factorial(double n) {
-        if (n < 0) throw new IllegalArgumentException("Factorial of negative number");
-        if (n == 0 || n == 1) return 1;
-        double result = 1;
-        for (int i = 2; i <= n; i++) {
-            result *= i;
+        @Override
+        protected void compute() {
+            if (to - from <= BATCH_GRANULARITY) {
+                for (int i = from; i < to; i++) {
+                    results[i] = tryCalculate(expressions[i]);
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new BatchTask(expressions, results, from, middle),
+                    new BatchTask(expressions, results, middle, to));
         }
-        return result;
     }
 }
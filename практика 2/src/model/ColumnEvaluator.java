@@ -0,0 +1,195 @@
+package model;
+
+import java.util.Arrays;
+
+// Вычисление RpnProgram по столбцам блоками строк: каждая инструкция выполняется сразу
+// для BLOCK строк. Ячейка стека - массив и смещение: переменная ссылается прямо на
+// входной столбец, результат операции записывается в собственный буфер ячейки.
+// + - * / и унарный минус выполняет ColumnKernel (на Vector API, если он доступен),
+// остальные операции - цикл по строкам блока с теми же функциями, что у интерпретатора,
+// поэтому результаты совпадают с построчным вычислением побитово.
+// Буферы переиспользуются, поэтому экземпляр не потокобезопасен.
+final class ColumnEvaluator {
+    // Блок целиком помещается в кэш процессора даже при глубоком стеке
+    static final int BLOCK = 1024;
+
+    private static final ColumnKernel KERNEL = ColumnKernel.load();
+
+    private static final ThreadLocal<ColumnEvaluator> LOCAL = ThreadLocal.withInitial(ColumnEvaluator::new);
+
+    // Собственные буферы ячеек стека и временных ячеек
+    private double[][] buffers = new double[0][];
+    // Откуда ячейка стека берет значения: свой буфер, столбец или временная ячейка
+    private double[][] arrays = new double[0][];
+    private int[] offsets = new int[0];
+    private double[] arguments = new double[0];
+
+    static ColumnEvaluator local() {
+        return LOCAL.get();
+    }
+
+    // true, если операции над блоками выполняются на Vector API
+    static boolean isVectorized() {
+        return KERNEL.isVectorized();
+    }
+
+    void evaluate(RpnProgram program, double[][] columns, double[] output) {
+        ensureCapacity(program.getMaxStackDepth() + program.getTempCount());
+        for (int from = 0; from < output.length; from += BLOCK) {
+            int length = Math.min(BLOCK, output.length - from);
+            evaluateBlock(program, columns, from, length);
+            System.arraycopy(arrays[0], offsets[0], output, from, length);
+        }
+    }
+
+    private void evaluateBlock(RpnProgram program, double[][] columns, int from, int length) {
+        int[] code = program.code();
+        double[] constants = program.constants();
+        double[][] buffers = this.buffers;
+        double[][] arrays = this.arrays;
+        int[] offsets = this.offsets;
+        // Временные ячейки идут сразу за стеком, как в RpnEvaluator
+        int temps = program.getMaxStackDepth();
+        int sp = 0;
+
+        for (int pc = 0; pc < code.length; pc++) {
+            int instruction = code[pc];
+            int operand = instruction >>> OpCode.OPCODE_BITS;
+            int op = instruction & OpCode.OPCODE_MASK;
+            switch (op) {
+                case OpCode.CONST:
+                    Arrays.fill(buffers[sp], 0, length, constants[operand]);
+                    arrays[sp] = buffers[sp];
+                    offsets[sp++] = 0;
+                    continue;
+                case OpCode.LOAD:
+                    arrays[sp] = columns[operand];
+                    offsets[sp++] = from;
+                    continue;
+                case OpCode.TEE:
+                    System.arraycopy(arrays[sp - 1], offsets[sp - 1], buffers[temps + operand], 0, length);
+                    continue;
+                case OpCode.LOAD_TEMP:
+                    arrays[sp] = buffers[temps + operand];
+                    offsets[sp++] = 0;
+                    continue;
+                case OpCode.ADD:
+                    sp--;
+                    KERNEL.add(arrays[sp - 1], offsets[sp - 1], arrays[sp], offsets[sp],
+                            buffers[sp - 1], length);
+                    break;
+                case OpCode.SUB:
+                    sp--;
+                    KERNEL.subtract(arrays[sp - 1], offsets[sp - 1], arrays[sp], offsets[sp],
+                            buffers[sp - 1], length);
+                    break;
+                case OpCode.MUL:
+                    sp--;
+                    KERNEL.multiply(arrays[sp - 1], offsets[sp - 1], arrays[sp], offsets[sp],
+                            buffers[sp - 1], length);
+                    break;
+                case OpCode.DIV:
+                    sp--;
+                    if (KERNEL.containsZero(arrays[sp], offsets[sp], length)) {
+                        throw new ArithmeticException(RpnEvaluator.DIVISION_BY_ZERO);
+                    }
+                    KERNEL.divide(arrays[sp - 1], offsets[sp - 1], arrays[sp], offsets[sp],
+                            buffers[sp - 1], length);
+                    break;
+                case OpCode.POW:
+                    sp--;
+                    if (isSquare(code, pc, constants)) {
+                        // x^2 == x*x побитово, а умножение выполняется векторно
+                        KERNEL.multiply(arrays[sp - 1], offsets[sp - 1], arrays[sp - 1], offsets[sp - 1],
+                                buffers[sp - 1], length);
+                    } else {
+                        binary(op, sp - 1, length);
+                    }
+                    break;
+                case OpCode.IDIV:
+                    sp--;
+                    binary(op, sp - 1, length);
+                    break;
+                case OpCode.NEG:
+                    KERNEL.negate(arrays[sp - 1], offsets[sp - 1], buffers[sp - 1], length);
+                    break;
+                case OpCode.FACT:
+                case OpCode.EXP:
+                case OpCode.LOG:
+                    unary(op, sp - 1, length);
+                    break;
+                default:
+                    sp = applyCustom(program, op, sp, length);
+                    continue;
+            }
+            // Результат операции лежит в собственном буфере ячейки
+            arrays[sp - 1] = buffers[sp - 1];
+            offsets[sp - 1] = 0;
+        }
+    }
+
+    // Показатель степени - константа 2, записанная предыдущей инструкцией
+    private static boolean isSquare(int[] code, int pc, double[] constants) {
+        int previous = code[pc - 1];
+        return OpCode.opcode(previous) == OpCode.CONST && constants[OpCode.operand(previous)] == 2;
+    }
+
+    // Степень и целочисленное деление - по строкам: возведение в степень на Vector API
+    // отличается от Math.pow в последнем знаке, а деление проверяет делитель само
+    private void binary(int op, int slot, int length) {
+        double[] a = arrays[slot];
+        double[] b = arrays[slot + 1];
+        int aOffset = offsets[slot];
+        int bOffset = offsets[slot + 1];
+        double[] result = buffers[slot];
+        for (int i = 0; i < length; i++) {
+            result[i] = RpnEvaluator.applyBinary(op, a[aOffset + i], b[bOffset + i]);
+        }
+    }
+
+    private void unary(int op, int slot, int length) {
+        double[] a = arrays[slot];
+        int aOffset = offsets[slot];
+        double[] result = buffers[slot];
+        for (int i = 0; i < length; i++) {
+            result[i] = RpnEvaluator.applyUnary(op, a[aOffset + i]);
+        }
+    }
+
+    // Пользовательские операторы вызываются для каждой строки; аргументы строки
+    // собираются в отдельный буфер, потому что Operator.apply ждет их подряд
+    private int applyCustom(RpnProgram program, int opcode, int sp, int length) {
+        Operator operator = program.customOperator(opcode);
+        if (operator == null) {
+            throw new IllegalStateException("Unknown opcode: " + opcode);
+        }
+        int arity = operator.getArity();
+        sp -= arity;
+        if (arguments.length < arity) {
+            arguments = new double[arity];
+        }
+        double[] result = buffers[sp];
+        for (int i = 0; i < length; i++) {
+            for (int k = 0; k < arity; k++) {
+                arguments[k] = arrays[sp + k][offsets[sp + k] + i];
+            }
+            result[i] = operator.apply(arguments, 0);
+        }
+        arrays[sp] = result;
+        offsets[sp] = 0;
+        return sp + 1;
+    }
+
+    private void ensureCapacity(int size) {
+        if (buffers.length < size) {
+            int capacity = Math.max(size, buffers.length * 2);
+            double[][] grown = Arrays.copyOf(buffers, capacity);
+            for (int i = buffers.length; i < capacity; i++) {
+                grown[i] = new double[BLOCK];
+            }
+            buffers = grown;
+            arrays = new double[capacity][];
+            offsets = new int[capacity];
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package model;
+
+// Поэлементные операции над блоками столбцов для ColumnEvaluator:
+// result[i] = a[aOffset + i] op b[bOffset + i] для i < length. Смещения позволяют
+// читать переменные прямо из входных столбцов, без копирования в буфер блока.
+// Реализация на Vector API (VectorColumnKernel, каталог src-vector) используется, если она
+// собрана и модуль подключен при запуске (--add-modules jdk.incubator.vector), иначе - простые циклы.
+interface ColumnKernel {
+    void add(double[] a, int aOffset, double[] b, int bOffset, double[] result, int length);
+
+    void subtract(double[] a, int aOffset, double[] b, int bOffset, double[] result, int length);
+
+    void multiply(double[] a, int aOffset, double[] b, int bOffset, double[] result, int length);
+
+    void divide(double[] a, int aOffset, double[] b, int bOffset, double[] result, int length);
+
+    void negate(double[] a, int aOffset, double[] result, int length);
+
+    // true, если среди length значений начиная с offset есть ноль (проверка делителя перед делением)
+    boolean containsZero(double[] a, int offset, int length);
+
+    boolean isVectorized();
+
+    static ColumnKernel load() {
+        try {
+            return (ColumnKernel) Class.forName("model.VectorColumnKernel").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // Модуль не подключен: класс не загружается или не проходит связывание
+            return new ScalarColumnKernel();
+        }
+    }
+}
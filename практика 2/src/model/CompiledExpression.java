@@ -0,0 +1,144 @@
+package model;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+// Неизменяемая скомпилированная формула с именованными переменными.
+// Один экземпляр можно вычислять многократно и из разных потоков.
+// После compilationThreshold вычислений (строк) формула переводится из интерпретатора
+// в байт-код (BytecodeCompiler); отрицательный порог отключает перевод.
+// Столбцы от VECTOR_MIN_ROWS строк при доступном Vector API вычисляются блоками (ColumnEvaluator).
+public final class CompiledExpression {
+    // На меньшем числе строк вычисление блоками не окупается
+    private static final int VECTOR_MIN_ROWS = 64;
+
+    private final String source;
+    private final List<String> variables;
+    private final RpnProgram program;
+    private final int compilationThreshold;
+    private final boolean vectorized;
+
+    private volatile CompiledFormula compiled;
+    private volatile boolean compilationAttempted;
+    // Счетчик без синхронизации: точное значение порога не важно
+    private long evaluations;
+
+    CompiledExpression(String source, List<String> variables, RpnProgram program, int compilationThreshold,
+                       boolean vectorized) {
+        this.source = source;
+        this.variables = Collections.unmodifiableList(variables);
+        this.program = program;
+        this.compilationThreshold = compilationThreshold;
+        this.vectorized = vectorized && ColumnEvaluator.isVectorized();
+        if (compilationThreshold == 0) {
+            promote();
+        }
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public List<String> getVariables() {
+        return variables;
+    }
+
+    public int indexOf(String variable) {
+        return variables.indexOf(variable);
+    }
+
+    RpnProgram getProgram() {
+        return program;
+    }
+
+    // Значения переменных передаются в порядке getVariables()
+    public double evaluate(double... values) {
+        if (values.length != variables.size()) {
+            throw new IllegalArgumentException("Expected " + variables.size() +
+                    " variable values, got " + values.length);
+        }
+        CompiledFormula formula = tier(1);
+        if (formula != null) {
+            return formula.evaluate(values);
+        }
+        return RpnEvaluator.local().evaluate(program, values);
+    }
+
+    // Вычисление по столбцам: columns[i] - значения i-й переменной, output - результаты по строкам
+    public void evaluate(double[][] columns, double[] output) {
+        if (columns.length != variables.size()) {
+            throw new IllegalArgumentException("Expected " + variables.size() +
+                    " columns, got " + columns.length);
+        }
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].length < output.length) {
+                throw new IllegalArgumentException("Column " + variables.get(i) + " is shorter than output");
+            }
+        }
+        if (vectorized && output.length >= VECTOR_MIN_ROWS) {
+            ColumnEvaluator.local().evaluate(program, columns, output);
+            return;
+        }
+        RpnEvaluator evaluator = RpnEvaluator.local();
+        CompiledFormula formula = tier(output.length);
+        if (formula == null) {
+            evaluator.evaluate(program, columns, output);
+            return;
+        }
+
+        double[] row = evaluator.rowFor(columns.length);
+        for (int r = 0; r < output.length; r++) {
+            for (int v = 0; v < columns.length; v++) {
+                row[v] = columns[v][r];
+            }
+            output[r] = formula.evaluate(row);
+        }
+    }
+
+    public void evaluate(Map<String, double[]> columns, double[] output) {
+        double[][] ordered = new double[variables.size()][];
+        for (int i = 0; i < ordered.length; i++) {
+            ordered[i] = columns.get(variables.get(i));
+            if (ordered[i] == null) {
+                throw new IllegalArgumentException("Missing column for variable: " + variables.get(i));
+            }
+        }
+        evaluate(ordered, output);
+    }
+
+    // true, если столбцы вычисляются блоками на Vector API
+    public boolean isVectorized() {
+        return vectorized;
+    }
+
+    // true, если формула уже вычисляется сгенерированным байт-кодом
+    public boolean isCompiledToBytecode() {
+        return compiled != null;
+    }
+
+    private CompiledFormula tier(int rows) {
+        CompiledFormula formula = compiled;
+        if (formula != null || compilationAttempted || compilationThreshold < 0) {
+            return formula;
+        }
+        evaluations += rows;
+        if (evaluations >= compilationThreshold) {
+            promote();
+        }
+        return compiled;
+    }
+
+    private synchronized void promote() {
+        if (compilationAttempted) {
+            return;
+        }
+        compiled = BytecodeCompiler.compile(program);
+        compilationAttempted = true;
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+}
@@ -0,0 +1,6 @@
+package model;
+
+// Формула, скомпилированная в байт-код: реализуется сгенерированными скрытыми классами
+interface CompiledFormula {
+    double evaluate(double[] variables);
+}
@@ -0,0 +1,211 @@
+package model;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.LongAdder;
+
+// Статистика движка одной модели: число выражений и ошибок, попадания в кэш,
+// гистограммы задержек этапов и оценка выделенной памяти.
+// Включается при запуске: -Dcalculator.stats=true (учет памяти - дополнительно
+// -Dcalculator.stats.allocation=true). Флаги - static final, поэтому при выключенной
+// статистике JIT убирает проверки и замеры из горячего пути целиком.
+public final class EngineStats implements EngineStatsMBean {
+    static final boolean ENABLED = Boolean.getBoolean("calculator.stats");
+    static final boolean ALLOCATION = ENABLED && Boolean.getBoolean("calculator.stats.allocation") &&
+            allocationSupported();
+    private static final com.sun.management.ThreadMXBean THREADS =
+            ALLOCATION ? (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean() : null;
+
+    // Этапы вычисления выражения. Проверка и перевод в ОПЗ выполняются одним проходом
+    // компилятора, поэтому отдельного этапа проверки нет
+    public enum Stage {
+        PARSE,
+        OPTIMIZE,
+        EVALUATE
+    }
+
+    private final ExpressionCache<?> cache;
+    private final LongAdder expressions = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Stage.values().length];
+    private final LongAdder[] allocated = new LongAdder[Stage.values().length];
+
+    EngineStats(ExpressionCache<?> cache) {
+        this.cache = cache;
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+            allocated[i] = new LongAdder();
+        }
+    }
+
+    // Отметка начала этапа; 0, если статистика выключена
+    static long now() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    // Память, выделенная текущим потоком с момента его запуска; 0, если учет выключен
+    static long allocatedBytes() {
+        if (!ALLOCATION) {
+            return 0;
+        }
+        return THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    void record(Stage stage, long startNanos, long startBytes) {
+        latencies[stage.ordinal()].record(System.nanoTime() - startNanos);
+        if (ALLOCATION) {
+            allocated[stage.ordinal()].add(allocatedBytes() - startBytes);
+        }
+    }
+
+    void countExpression() {
+        expressions.increment();
+    }
+
+    void countError() {
+        errors.increment();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return ENABLED;
+    }
+
+    @Override
+    public boolean isAllocationTracked() {
+        return ALLOCATION;
+    }
+
+    @Override
+    public long getExpressions() {
+        return expressions.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cache.getHits();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return cache.getMisses();
+    }
+
+    public long getCount(Stage stage) {
+        return latencies[stage.ordinal()].getCount();
+    }
+
+    public double getMeanMicros(Stage stage) {
+        return latencies[stage.ordinal()].getMeanNanos() / 1000;
+    }
+
+    // Процентиль задержки этапа с точностью до степени двойки (округление вверх)
+    public double getPercentileMicros(Stage stage, double percentile) {
+        return latencies[stage.ordinal()].getPercentileNanos(percentile) / 1000.0;
+    }
+
+    public double getMaxMicros(Stage stage) {
+        return latencies[stage.ordinal()].getMaxNanos() / 1000.0;
+    }
+
+    // Средняя выделенная память за один проход этапа, в байтах
+    public double getAllocatedBytesPerCall(Stage stage) {
+        long count = getCount(stage);
+        return count == 0 ? 0 : (double) allocated[stage.ordinal()].sum() / count;
+    }
+
+    @Override
+    public double getParseMeanMicros() {
+        return getMeanMicros(Stage.PARSE);
+    }
+
+    @Override
+    public double getParseP99Micros() {
+        return getPercentileMicros(Stage.PARSE, 99);
+    }
+
+    @Override
+    public double getOptimizeMeanMicros() {
+        return getMeanMicros(Stage.OPTIMIZE);
+    }
+
+    @Override
+    public double getOptimizeP99Micros() {
+        return getPercentileMicros(Stage.OPTIMIZE, 99);
+    }
+
+    @Override
+    public double getEvaluateMeanMicros() {
+        return getMeanMicros(Stage.EVALUATE);
+    }
+
+    @Override
+    public double getEvaluateP99Micros() {
+        return getPercentileMicros(Stage.EVALUATE, 99);
+    }
+
+    @Override
+    public double getAllocatedBytesPerExpression() {
+        long count = expressions.sum();
+        if (count == 0) {
+            return 0;
+        }
+        long total = 0;
+        for (LongAdder bytes : allocated) {
+            total += bytes.sum();
+        }
+        return (double) total / count;
+    }
+
+    @Override
+    public String getSummary() {
+        if (!ENABLED) {
+            return "Statistics are disabled (start with -Dcalculator.stats=true)";
+        }
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("Expressions: %d, errors: %d, cache hits: %d, cache misses: %d%n",
+                getExpressions(), getErrors(), getCacheHits(), getCacheMisses()));
+        summary.append(String.format("%-10s %10s %10s %10s %10s %10s %12s%n",
+                "Stage", "Count", "Mean us", "p50 us", "p99 us", "Max us", "Alloc B/op"));
+        for (Stage stage : Stage.values()) {
+            summary.append(String.format("%-10s %10d %10.2f %10.2f %10.2f %10.2f %12s%n",
+                    stage.name().toLowerCase(), getCount(stage), getMeanMicros(stage),
+                    getPercentileMicros(stage, 50), getPercentileMicros(stage, 99), getMaxMicros(stage),
+                    ALLOCATION ? String.format("%.0f", getAllocatedBytesPerCall(stage)) : "-"));
+        }
+        return summary.toString().trim();
+    }
+
+    @Override
+    public void reset() {
+        expressions.reset();
+        errors.reset();
+        // Счетчики кэша входят в ту же сводку, поэтому сбрасываются вместе со статистикой
+        cache.resetCounters();
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i].reset();
+            allocated[i].reset();
+        }
+    }
+
+    // Регистрация в платформенном MBeanServer под именем model:type=EngineStats,name=<name>
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName("model:type=EngineStats,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    private static boolean allocationSupported() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        return threads instanceof com.sun.management.ThreadMXBean &&
+                ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported() &&
+                ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemoryEnabled();
+    }
+}
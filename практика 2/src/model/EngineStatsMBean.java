@@ -0,0 +1,35 @@
+package model;
+
+// JMX-интерфейс статистики движка (EngineStats.registerMBean). Времена - в микросекундах
+public interface EngineStatsMBean {
+    boolean isEnabled();
+
+    boolean isAllocationTracked();
+
+    long getExpressions();
+
+    long getErrors();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    double getParseMeanMicros();
+
+    double getParseP99Micros();
+
+    double getOptimizeMeanMicros();
+
+    double getOptimizeP99Micros();
+
+    double getEvaluateMeanMicros();
+
+    double getEvaluateP99Micros();
+
+    // Оценка выделенной памяти на одно выражение (по всем этапам), в байтах
+    double getAllocatedBytesPerExpression();
+
+    String getSummary();
+
+    void reset();
+}
@@ -0,0 +1,24 @@
+package model;
+
+// Коды ошибок разбора и вычисления для API без исключений (CalculatorModel.tryCalculate)
+public enum ErrorCode {
+    EMPTY_EXPRESSION,
+    MISSING_OPERAND,
+    UNBALANCED_PARENTHESES,
+    INVALID_EXPRESSION,
+    UNEXPECTED_CHARACTER,
+    INVALID_NUMBER,
+    UNKNOWN_VARIABLE,
+    WRONG_ARGUMENT_COUNT,
+    TOO_MANY_TERMS,
+    DIVISION_BY_ZERO,
+    NEGATIVE_FACTORIAL;
+
+    // Исключение, которое бросает обычный (не try-) API для этой ошибки
+    RuntimeException toException(String message) {
+        if (this == DIVISION_BY_ZERO) {
+            return new ArithmeticException(message);
+        }
+        return new IllegalArgumentException(message);
+    }
+}
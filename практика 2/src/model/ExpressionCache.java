@@ -0,0 +1,142 @@
+package model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+// Ограниченный LRU-кэш скомпилированных выражений.
+// Кэш разбит на сегменты со своими блокировками, чтобы параллельные
+// вычисления не упирались в одну общую блокировку.
+public class ExpressionCache<V> {
+    private static final int MAX_SEGMENTS = 64;
+    private static final int MIN_SEGMENT_CAPACITY = 16;
+
+    private final int capacity;
+    private final Segment<V>[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public ExpressionCache(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Cache capacity cannot be negative");
+        }
+        this.capacity = capacity;
+
+        int segmentCount = 1;
+        int processors = Runtime.getRuntime().availableProcessors();
+        while (segmentCount < processors && segmentCount < MAX_SEGMENTS &&
+                capacity / (segmentCount * 2) >= MIN_SEGMENT_CAPACITY) {
+            segmentCount *= 2;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Segment<V>[] segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>((capacity + segmentCount - 1) / segmentCount);
+        }
+        this.segments = segments;
+    }
+
+    public V get(String expression, Function<String, V> compiler) {
+        Segment<V> segment = segmentFor(expression);
+        V cached = segment.get(expression);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+
+        // Компиляция идет вне блокировки: ошибки разбора (исключение или null) не попадают в кэш.
+        // Если за время компиляции кэш сбросили, программа могла собраться по старым правилам
+        // (таблица операторов, ограничения) и в кэш не кладется
+        long generation = segment.generation();
+        V compiled = compiler.apply(expression);
+        if (compiled != null && capacity > 0) {
+            segment.put(expression, compiled, generation);
+        }
+        return compiled;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void clear() {
+        invalidate();
+        resetCounters();
+    }
+
+    // Удаление всех выражений без сброса счетчиков попаданий
+    public void invalidate() {
+        for (Segment<V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public void resetCounters() {
+        hits.reset();
+        misses.reset();
+    }
+
+    private Segment<V> segmentFor(String expression) {
+        int h = expression.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (segments.length - 1)];
+    }
+
+    private static class Segment<V> {
+        private final LinkedHashMap<String, V> entries;
+        // Число очисток сегмента
+        private long generation;
+
+        Segment(int capacity) {
+            // accessOrder = true: вытесняется давно не использованное выражение (LRU)
+            this.entries = new LinkedHashMap<String, V>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        synchronized V get(String expression) {
+            return entries.get(expression);
+        }
+
+        synchronized long generation() {
+            return generation;
+        }
+
+        synchronized void put(String expression, V value, long generation) {
+            if (generation == this.generation) {
+                entries.put(expression, value);
+            }
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        synchronized void clear() {
+            entries.clear();
+            generation++;
+        }
+    }
+}
@@ -0,0 +1,567 @@
+package model;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Однопроходный компилятор: лексический разбор и алгоритм сортировочной станции
+// работают прямо над исходным текстом и сразу порождают инструкции RpnProgram.
+// Время разбора линейно по длине выражения; размер ограничен только maxTerms.
+// Экземпляр не потокобезопасен: рабочие буферы переиспользуются между вызовами.
+public class ExpressionCompiler {
+    private static final int LEFT_PAREN = -1;
+    private static final int MAX_CONSTANTS = 1 << (32 - OpCode.OPCODE_BITS);
+
+    // Точное представление мантиссы в double (2^53) и степени 10, точные в double
+    private static final long MAX_EXACT_MANTISSA = (1L << 53) / 10;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // Ограничение по умолчанию на число операндов (чисел и переменных) в выражении
+    public static final int DEFAULT_MAX_TERMS = 10_000_000;
+    private static final int BUFFER_SIZE = 8192;
+    private static final int END = -1;
+
+    // Таблица операторов по умолчанию: только встроенные операторы и функции
+    private static final OperatorRegistry DEFAULT_REGISTRY = new OperatorRegistry();
+
+    private OperatorRegistry registry = DEFAULT_REGISTRY;
+    // Снимок таблицы операторов на время одного разбора
+    private OperatorRegistry.Table table;
+    private boolean customOperators;
+
+    private int[] operators = new int[16];
+    // Для каждой открывающей скобки в стеке - число аргументов функции, разделенных запятыми
+    private int[] argumentCounts = new int[16];
+    private int operatorCount;
+    private int[] code = new int[64];
+    private int codeLength;
+    private double[] constants = new double[16];
+    private long[] integerConstants = new long[16];
+    private int constantCount;
+    // true, пока в выражении только целые литералы и операции + - * // ^ ! (см. IntegerEvaluator)
+    private boolean integral;
+    private int depth;
+    private int maxDepth;
+    private int terms;
+    private int maxTerms = DEFAULT_MAX_TERMS;
+    private List<String> variables;
+    private final Map<String, Integer> variableIndex = new HashMap<>();
+    private boolean discoverVariables;
+
+    // Источник символов: либо CharSequence, либо Reader через буфер фиксированного размера.
+    // Разбор идет строго слева направо с просмотром на один символ вперед,
+    // поэтому дополнительная память не зависит от длины выражения (кроме стека скобок)
+    private CharSequence text;
+    private Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int bufferPosition;
+    private int bufferLimit;
+    private int position;
+    // Текст текущего числа или идентификатора
+    private final StringBuilder token = new StringBuilder();
+
+    // Ошибка последнего разбора: записывается вместо исключения, см. tryCompile
+    private ErrorCode errorCode;
+    private int errorPosition;
+    private String errorMessage;
+
+    public int getMaxTerms() {
+        return maxTerms;
+    }
+
+    public void setMaxTerms(int maxTerms) {
+        if (maxTerms < 1) {
+            throw new IllegalArgumentException("Term limit must be positive");
+        }
+        this.maxTerms = maxTerms;
+    }
+
+    public OperatorRegistry getOperatorRegistry() {
+        return registry;
+    }
+
+    public void setOperatorRegistry(OperatorRegistry registry) {
+        if (registry == null) {
+            throw new IllegalArgumentException("Operator registry cannot be null");
+        }
+        this.registry = registry;
+    }
+
+    public RpnProgram compile(CharSequence expression) {
+        return compile(expression, null, false);
+    }
+
+    // variables - имена переменных, индекс в списке становится номером переменной в программе.
+    // При discoverVariables = true новые имена добавляются в список в порядке появления.
+    public RpnProgram compile(CharSequence expression, List<String> variables, boolean discoverVariables) {
+        return orThrow(tryCompile(expression, variables, discoverVariables));
+    }
+
+    // Разбор без исключений: при ошибке возвращает null, подробности - getErrorCode(),
+    // getErrorPosition() и getErrorMessage()
+    public RpnProgram tryCompile(CharSequence expression) {
+        return tryCompile(expression, null, false);
+    }
+
+    public RpnProgram tryCompile(CharSequence expression, List<String> variables, boolean discoverVariables) {
+        text = expression;
+        reader = null;
+        return compile(variables, discoverVariables);
+    }
+
+    // Потоковый разбор: выражение читается из reader порциями и целиком в памяти не хранится
+    public RpnProgram compile(Reader expression, List<String> variables, boolean discoverVariables)
+            throws IOException {
+        text = null;
+        reader = expression;
+        try {
+            return orThrow(compile(variables, discoverVariables));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            reader = null;
+        }
+    }
+
+    public ErrorCode getErrorCode() {
+        return errorCode;
+    }
+
+    public int getErrorPosition() {
+        return errorPosition;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    private RpnProgram orThrow(RpnProgram program) {
+        if (program == null) {
+            throw errorCode.toException(errorMessage);
+        }
+        return program;
+    }
+
+    private RpnProgram compile(List<String> variables, boolean discoverVariables) {
+        reset();
+        this.variables = variables;
+        this.discoverVariables = discoverVariables;
+        if (variables != null) {
+            for (int index = 0; index < variables.size(); index++) {
+                variableIndex.put(variables.get(index), index);
+            }
+        }
+
+        try {
+            return parse();
+        } finally {
+            text = null;
+            table = null;
+            this.variables = null;
+            variableIndex.clear();
+        }
+    }
+
+    private RpnProgram parse() {
+        boolean empty = true;
+        boolean expectOperand = true;
+        int next;
+        while (errorCode == null && (next = peek()) != END) {
+            char c = (char) next;
+
+            if (Character.isWhitespace(c)) {
+                advance();
+                continue;
+            }
+            empty = false;
+
+            if (expectOperand) {
+                // Ожидается операнд: число, скобка, функция или унарный знак
+                if (isDigit(c) || c == '.') {
+                    readNumber();
+                    expectOperand = false;
+                } else if (c == '(') {
+                    pushOperator(LEFT_PAREN);
+                    advance();
+                } else if (c == '+') {
+                    advance();
+                } else if (table.prefix(c) != null) {
+                    pushOperator(table.prefix(c).getOpcode());
+                    advance();
+                } else if (isLetter(c)) {
+                    int start = position;
+                    readIdentifier();
+                    Operator function = table.function(token);
+                    if (function != null) {
+                        pushFunction(function, start);
+                    } else {
+                        emit(OpCode.encode(OpCode.LOAD, findVariable(start)));
+                        integral = false;
+                        expectOperand = false;
+                    }
+                } else {
+                    unexpected(c, position);
+                }
+                continue;
+            }
+
+            // Операнд уже прочитан: бинарный или постфиксный оператор, запятая или закрывающая скобка
+            int at = position;
+            advance();
+            if (c == ')') {
+                closeParenthesis(at);
+                continue;
+            }
+            if (c == ',') {
+                separateArgument(at);
+                expectOperand = true;
+                continue;
+            }
+
+            Operator operator = table.pair(c, peek());
+            if (operator != null) {
+                advance();
+            } else {
+                operator = table.single(c);
+            }
+            if (operator == null) {
+                unexpected(c, at);
+            } else if (operator.getKind() == Operator.Kind.POSTFIX) {
+                emit(operator.getOpcode());
+            } else {
+                pushBinary(operator);
+                expectOperand = true;
+            }
+        }
+
+        if (errorCode != null) {
+            return null;
+        }
+        if (empty) {
+            return fail(ErrorCode.EMPTY_EXPRESSION, 0, "Expression cannot be empty");
+        }
+        if (expectOperand) {
+            return fail(ErrorCode.MISSING_OPERAND, position, "Expression must start and end with valid terms");
+        }
+
+        while (operatorCount > 0) {
+            int op = operators[--operatorCount];
+            if (op == LEFT_PAREN) {
+                return fail(ErrorCode.UNBALANCED_PARENTHESES, position, "Unbalanced parentheses");
+            }
+            emit(op);
+        }
+        if (errorCode != null) {
+            return null;
+        }
+
+        return new RpnProgram(Arrays.copyOf(code, codeLength), Arrays.copyOf(constants, constantCount),
+                integral ? Arrays.copyOf(integerConstants, constantCount) : null,
+                customOperators ? table.operators() : null, maxDepth);
+    }
+
+    private void reset() {
+        operatorCount = 0;
+        codeLength = 0;
+        constantCount = 0;
+        depth = 0;
+        maxDepth = 0;
+        terms = 0;
+        integral = true;
+        customOperators = false;
+        table = registry.table();
+        errorCode = null;
+        errorPosition = -1;
+        errorMessage = null;
+        position = 0;
+        bufferPosition = 0;
+        bufferLimit = 0;
+    }
+
+    private int peek() {
+        if (reader == null) {
+            return position < text.length() ? text.charAt(position) : END;
+        }
+        if (bufferPosition == bufferLimit && !fill()) {
+            return END;
+        }
+        return buffer[bufferPosition];
+    }
+
+    private void advance() {
+        position++;
+        bufferPosition++;
+    }
+
+    private boolean fill() {
+        try {
+            int count;
+            do {
+                count = reader.read(buffer, 0, buffer.length);
+            } while (count == 0);
+            if (count < 0) {
+                return false;
+            }
+            bufferPosition = 0;
+            bufferLimit = count;
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void readNumber() {
+        int start = position;
+        long mantissa = 0;
+        int fractionDigits = 0;
+        boolean fraction = false;
+        boolean exact = true;
+        // Целый литерал накапливается в long полностью, без ограничения точности double
+        long integer = 0;
+        boolean integerOverflow = false;
+        token.setLength(0);
+
+        int next;
+        while ((next = peek()) != END) {
+            char c = (char) next;
+            if (isDigit(c)) {
+                if (integer > (Long.MAX_VALUE - (c - '0')) / 10) {
+                    integerOverflow = true;
+                } else {
+                    integer = integer * 10 + (c - '0');
+                }
+                if (mantissa < MAX_EXACT_MANTISSA) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (fraction) fractionDigits++;
+                } else {
+                    exact = false;
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+            token.append(c);
+            advance();
+        }
+
+        if (fraction && token.length() == 1) {
+            fail(ErrorCode.INVALID_NUMBER, start, "Invalid number at position " + start);
+            return;
+        }
+
+        if (!fraction && !integerOverflow) {
+            // Преобразование long в double округляет к ближайшему, как и Double.parseDouble
+            addConstant(integer, integer);
+            return;
+        }
+        integral = false;
+
+        // Частное двух точных double округляется так же, как Double.parseDouble;
+        // остальные (длинные) литералы разбираются стандартным способом
+        double value;
+        if (exact && fractionDigits < POWERS_OF_TEN.length) {
+            value = fractionDigits == 0 ? mantissa : mantissa / POWERS_OF_TEN[fractionDigits];
+        } else {
+            value = Double.parseDouble(token.toString());
+        }
+
+        addConstant(value, 0);
+    }
+
+    private void readIdentifier() {
+        token.setLength(0);
+        int next;
+        while ((next = peek()) != END && (isLetter((char) next) || isDigit((char) next))) {
+            token.append((char) next);
+            advance();
+        }
+    }
+
+    private int findVariable(int start) {
+        if (variables != null) {
+            String name = token.toString();
+            Integer index = variableIndex.get(name);
+            if (index != null) {
+                return index;
+            }
+            if (discoverVariables) {
+                variables.add(name);
+                variableIndex.put(name, variables.size() - 1);
+                return variables.size() - 1;
+            }
+        }
+        fail(ErrorCode.UNKNOWN_VARIABLE, start, "Unknown variable: " + token);
+        return 0;
+    }
+
+    static boolean isIdentifier(String name) {
+        if (name == null || name.isEmpty() || !isLetter(name.charAt(0))) return false;
+        for (int i = 1; i < name.length(); i++) {
+            if (!isLetter(name.charAt(i)) && !isDigit(name.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    private void closeParenthesis(int at) {
+        while (operatorCount > 0 && operators[operatorCount - 1] != LEFT_PAREN) {
+            emit(operators[--operatorCount]);
+        }
+        if (operatorCount == 0) {
+            fail(ErrorCode.UNBALANCED_PARENTHESES, at, "Unbalanced parentheses");
+            return;
+        }
+        int arguments = argumentCounts[--operatorCount]; // Удаляем "("
+
+        // Функция применяется сразу к своим аргументам в скобках
+        if (operatorCount > 0 && isFunction(operators[operatorCount - 1])) {
+            Operator function = table.operator(operators[--operatorCount]);
+            if (arguments != function.getArity()) {
+                fail(ErrorCode.WRONG_ARGUMENT_COUNT, at, "Function " + function.getName() + " expects " +
+                        function.getArity() + " argument(s), got " + arguments);
+                return;
+            }
+            emit(function.getOpcode());
+        }
+    }
+
+    // Запятая допустима только между аргументами функции: f(a, b)
+    private void separateArgument(int at) {
+        while (operatorCount > 0 && operators[operatorCount - 1] != LEFT_PAREN) {
+            emit(operators[--operatorCount]);
+        }
+        if (operatorCount < 2 || !isFunction(operators[operatorCount - 2])) {
+            fail(ErrorCode.INVALID_EXPRESSION, at, "Invalid expression");
+            return;
+        }
+        argumentCounts[operatorCount - 1]++;
+    }
+
+    private void pushFunction(Operator function, int start) {
+        // Функцию нескольких аргументов можно вызвать только со скобками
+        if (function.getArity() != 1) {
+            int next;
+            while ((next = peek()) != END && Character.isWhitespace((char) next)) {
+                advance();
+            }
+            if (next != '(') {
+                fail(ErrorCode.INVALID_EXPRESSION, start, "Expected '(' after function " + function.getName());
+                return;
+            }
+        }
+        pushOperator(function.getOpcode());
+    }
+
+    private void pushBinary(Operator operator) {
+        int precedence = operator.getPrecedence();
+        while (operatorCount > 0 && operators[operatorCount - 1] != LEFT_PAREN) {
+            int top = table.operator(operators[operatorCount - 1]).getPrecedence();
+            if (top < precedence || (top == precedence && operator.isRightAssociative())) {
+                break;
+            }
+            emit(operators[--operatorCount]);
+        }
+        pushOperator(operator.getOpcode());
+    }
+
+    private void pushOperator(int op) {
+        if (operatorCount == operators.length) {
+            operators = Arrays.copyOf(operators, operatorCount * 2);
+            argumentCounts = Arrays.copyOf(argumentCounts, operatorCount * 2);
+        }
+        argumentCounts[operatorCount] = 1;
+        operators[operatorCount++] = op;
+    }
+
+    private void addConstant(double value, long integerValue) {
+        if (constantCount == MAX_CONSTANTS) {
+            fail(ErrorCode.TOO_MANY_TERMS, position, "Too many constants in expression");
+            return;
+        }
+        if (constantCount == constants.length) {
+            constants = Arrays.copyOf(constants, constantCount * 2);
+            integerConstants = Arrays.copyOf(integerConstants, constantCount * 2);
+        }
+        constants[constantCount] = value;
+        integerConstants[constantCount] = integerValue;
+        emit(OpCode.encode(OpCode.CONST, constantCount++));
+    }
+
+    private void emit(int instruction) {
+        if (codeLength == code.length) {
+            code = Arrays.copyOf(code, codeLength * 2);
+        }
+        code[codeLength++] = instruction;
+
+        int op = OpCode.opcode(instruction);
+        switch (op) {
+            case OpCode.CONST:
+            case OpCode.LOAD:
+                if (++terms > maxTerms && errorCode == null) {
+                    fail(ErrorCode.TOO_MANY_TERMS, position, "Too many terms (maximum " + maxTerms + ")");
+                }
+                depth++;
+                maxDepth = Math.max(maxDepth, depth);
+                return;
+            case OpCode.DIV:
+            case OpCode.EXP:
+            case OpCode.LOG:
+                integral = false;
+                break;
+            default:
+                break;
+        }
+        if (op >= OpCode.FIRST_CUSTOM) {
+            integral = false;
+            customOperators = true;
+        }
+        // Операция снимает со стека свои аргументы и кладет результат
+        depth -= table.operator(op).getArity() - 1;
+    }
+
+    private boolean isFunction(int op) {
+        return op != LEFT_PAREN && table.operator(op).getKind() == Operator.Kind.FUNCTION;
+    }
+
+    static boolean matches(CharSequence expression, int start, int end, String name) {
+        if (end - start != name.length()) return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (expression.charAt(start + i) != name.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '_';
+    }
+
+    private void unexpected(char c, int at) {
+        if (isDigit(c) || isLetter(c) || c == '(' || c == ')' || c == '.' ||
+                c == '+' || c == '-' || c == '*' || c == '/' || c == '^' || c == '!') {
+            fail(ErrorCode.INVALID_EXPRESSION, at, "Invalid expression");
+        } else {
+            fail(ErrorCode.UNEXPECTED_CHARACTER, at, "Unexpected character '" + c + "' at position " + at);
+        }
+    }
+
+    // Запоминает первую ошибку разбора; дальнейший разбор прекращается
+    private RpnProgram fail(ErrorCode code, int at, String message) {
+        if (errorCode == null) {
+            errorCode = code;
+            errorPosition = at;
+            errorMessage = message;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,253 @@
+package model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Оптимизация программы между разбором и вычислением:
+// свертка константных подвыражений, удаление тождеств (x*1, x/1, x+0, x-0, x^1, --x)
+// и объединение повторяющихся подвыражений - их значение вычисляется один раз
+// и сохраняется во временную ячейку.
+// Подвыражения, вычисление которых дает ошибку (например, деление на ноль), не сворачиваются,
+// чтобы ошибка возникала при вычислении, как и без оптимизации.
+// Все обходы итеративные, поэтому глубина вложенности ограничена только памятью.
+final class ExpressionOptimizer {
+    private static final int NONE = -1;
+
+    // Узлы графа выражения хранятся в параллельных массивах; дочерние узлы всегда
+    // создаются раньше родительских, поэтому номера узлов идут в топологическом порядке
+    private final int[] ops;
+    private final int[] lefts;
+    private final int[] rights;
+    private final double[] values;
+    private int nodeCount;
+    private final Map<NodeKey, Integer> unique = new HashMap<>();
+
+    private ExpressionOptimizer(int capacity) {
+        ops = new int[capacity];
+        lefts = new int[capacity];
+        rights = new int[capacity];
+        values = new double[capacity];
+    }
+
+    static RpnProgram optimize(RpnProgram program) {
+        // Пользовательские операторы могут иметь любое число аргументов и побочные эффекты,
+        // такие программы выполняются без оптимизации
+        if (program.hasCustomOperators()) {
+            return program;
+        }
+        return new ExpressionOptimizer(program.length()).run(program);
+    }
+
+    private RpnProgram run(RpnProgram program) {
+        double[] constants = program.constants();
+        int[] stack = new int[program.getMaxStackDepth()];
+        int sp = 0;
+
+        for (int instruction : program.code()) {
+            int op = OpCode.opcode(instruction);
+            switch (op) {
+                case OpCode.CONST:
+                    stack[sp++] = constant(constants[OpCode.operand(instruction)]);
+                    break;
+                case OpCode.LOAD:
+                    stack[sp++] = node(OpCode.LOAD, OpCode.operand(instruction), NONE, 0);
+                    break;
+                case OpCode.NEG:
+                case OpCode.FACT:
+                case OpCode.EXP:
+                case OpCode.LOG:
+                    stack[sp - 1] = unary(op, stack[sp - 1]);
+                    break;
+                case OpCode.ADD:
+                case OpCode.SUB:
+                case OpCode.MUL:
+                case OpCode.DIV:
+                case OpCode.IDIV:
+                case OpCode.POW:
+                    sp--;
+                    stack[sp - 1] = binary(op, stack[sp - 1], stack[sp]);
+                    break;
+                default:
+                    throw new IllegalStateException("Cannot optimize opcode: " + op);
+            }
+        }
+
+        return emit(stack[0]);
+    }
+
+    private int unary(int op, int a) {
+        if (op == OpCode.NEG && ops[a] == OpCode.NEG) {
+            return lefts[a];
+        }
+        // Ошибочная операция (например, факториал отрицательного числа) остается в программе
+        if (ops[a] == OpCode.CONST && RpnEvaluator.isDefined(op, values[a], 0)) {
+            return constant(RpnEvaluator.applyUnary(op, values[a]));
+        }
+        return node(op, a, NONE, 0);
+    }
+
+    private int binary(int op, int a, int b) {
+        if (ops[a] == OpCode.CONST && ops[b] == OpCode.CONST &&
+                RpnEvaluator.isDefined(op, values[a], values[b])) {
+            return constant(RpnEvaluator.applyBinary(op, values[a], values[b]));
+        }
+
+        switch (op) {
+            // Тождества с нулем точны только для нуля нужного знака: -0.0 + 0.0 = +0.0,
+            // а x + (-0.0) и x - 0.0 равны x при любом x, включая -0.0
+            case OpCode.ADD:
+                if (isZero(b, true)) return a;
+                if (isZero(a, true)) return b;
+                break;
+            case OpCode.SUB:
+                if (isZero(b, false)) return a;
+                break;
+            case OpCode.MUL:
+                if (isConstant(b, 1)) return a;
+                if (isConstant(a, 1)) return b;
+                break;
+            case OpCode.DIV:
+            case OpCode.POW:
+                if (isConstant(b, 1)) return a;
+                break;
+            default:
+                break;
+        }
+        return node(op, a, b, 0);
+    }
+
+    private boolean isZero(int node, boolean negative) {
+        return ops[node] == OpCode.CONST &&
+                Double.doubleToRawLongBits(values[node]) == Double.doubleToRawLongBits(negative ? -0.0 : 0.0);
+    }
+
+    private boolean isConstant(int node, double value) {
+        return ops[node] == OpCode.CONST && values[node] == value;
+    }
+
+    private int constant(double value) {
+        return node(OpCode.CONST, NONE, NONE, value);
+    }
+
+    private int node(int op, int left, int right, double value) {
+        NodeKey key = new NodeKey(op, left, right, Double.doubleToLongBits(value));
+        Integer existing = unique.get(key);
+        if (existing != null) {
+            return existing;
+        }
+
+        int id = nodeCount++;
+        ops[id] = op;
+        lefts[id] = left;
+        rights[id] = right;
+        values[id] = value;
+        unique.put(key, id);
+        return id;
+    }
+
+    private RpnProgram emit(int root) {
+        // Подсчет использований узлов, достижимых из корня
+        int[] uses = new int[nodeCount];
+        boolean[] reachable = new boolean[nodeCount];
+        reachable[root] = true;
+        for (int id = root; id >= 0; id--) {
+            if (!reachable[id] || isLeaf(id)) continue;
+            reachable[lefts[id]] = true;
+            uses[lefts[id]]++;
+            if (rights[id] != NONE) {
+                reachable[rights[id]] = true;
+                uses[rights[id]]++;
+            }
+        }
+
+        int[] slots = new int[nodeCount];
+        Arrays.fill(slots, NONE);
+        int tempCount = 0;
+        int[] code = new int[nodeCount * 4 + 1];
+        int codeLength = 0;
+        double[] constants = new double[nodeCount];
+        int constantCount = 0;
+        Map<Long, Integer> constantIndex = new HashMap<>();
+        int depth = 0;
+        int maxDepth = 0;
+
+        // Обратный польский порядок без рекурсии: ~id в стеке означает "дочерние узлы уже выведены"
+        int[] pending = new int[nodeCount * 2 + 1];
+        int top = 0;
+        pending[top++] = root;
+        while (top > 0) {
+            int item = pending[--top];
+            if (item < 0) {
+                int id = ~item;
+                code[codeLength++] = ops[id];
+                if (rights[id] != NONE) depth--;
+                if (uses[id] > 1) {
+                    slots[id] = tempCount++;
+                    code[codeLength++] = OpCode.encode(OpCode.TEE, slots[id]);
+                }
+                continue;
+            }
+
+            int id = item;
+            if (slots[id] != NONE) {
+                code[codeLength++] = OpCode.encode(OpCode.LOAD_TEMP, slots[id]);
+            } else if (ops[id] == OpCode.CONST) {
+                long bits = Double.doubleToLongBits(values[id]);
+                Integer index = constantIndex.get(bits);
+                if (index == null) {
+                    index = constantCount;
+                    constants[constantCount++] = values[id];
+                    constantIndex.put(bits, index);
+                }
+                code[codeLength++] = OpCode.encode(OpCode.CONST, index);
+            } else if (ops[id] == OpCode.LOAD) {
+                code[codeLength++] = OpCode.encode(OpCode.LOAD, lefts[id]);
+            } else {
+                pending[top++] = ~id;
+                if (rights[id] != NONE) pending[top++] = rights[id];
+                pending[top++] = lefts[id];
+                continue;
+            }
+            depth++;
+            maxDepth = Math.max(maxDepth, depth);
+        }
+
+        return new RpnProgram(Arrays.copyOf(code, codeLength),
+                Arrays.copyOf(constants, constantCount), maxDepth, tempCount);
+    }
+
+    private boolean isLeaf(int id) {
+        return ops[id] == OpCode.CONST || ops[id] == OpCode.LOAD;
+    }
+
+    private static final class NodeKey {
+        private final int op;
+        private final int left;
+        private final int right;
+        private final long value;
+
+        NodeKey(int op, int left, int right, long value) {
+            this.op = op;
+            this.left = left;
+            this.right = right;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof NodeKey)) return false;
+            NodeKey other = (NodeKey) o;
+            return op == other.op && left == other.left && right == other.right && value == other.value;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = op;
+            h = 31 * h + left;
+            h = 31 * h + right;
+            h = 31 * h + Long.hashCode(value);
+            return h;
+        }
+    }
+}
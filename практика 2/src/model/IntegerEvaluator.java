@@ -0,0 +1,216 @@
+package model;
+
+import java.math.BigInteger;
+
+// Точное вычисление целочисленных выражений (RpnProgram.isIntegral()).
+// Сначала используется long с проверкой переполнения; при переполнении вычисление
+// повторяется в BigInteger. null означает, что точный целый результат не получить
+// (отрицательная степень, ошибка вычисления, слишком большое число) и выражение
+// нужно вычислять в double как обычно. Так же и для нуля, который в double получился бы
+// отрицательным (-0, 0*-3, -1//5): в long и BigInteger -0.0 не представить.
+final class IntegerEvaluator {
+    // Ограничение на размер промежуточных значений BigInteger, в битах
+    private static final int MAX_BITS = 1 << 16;
+
+    private static final long[] FACTORIALS = new long[21];
+
+    static {
+        FACTORIALS[0] = 1;
+        for (int i = 1; i < FACTORIALS.length; i++) {
+            FACTORIALS[i] = FACTORIALS[i - 1] * i;
+        }
+    }
+
+    // Признак переполнения long: вычисление нужно повторить в BigInteger
+    private boolean overflow;
+
+    private IntegerEvaluator() {
+    }
+
+    static Number evaluate(RpnProgram program) {
+        if (!program.isIntegral()) {
+            return null;
+        }
+        IntegerEvaluator evaluator = new IntegerEvaluator();
+        Number result = evaluator.evaluateLong(program);
+        if (evaluator.overflow) {
+            result = evaluateBig(program);
+        }
+        return result;
+    }
+
+    private Number evaluateLong(RpnProgram program) {
+        int[] code = program.code();
+        long[] constants = program.integerConstants();
+        long[] stack = new long[program.getMaxStackDepth()];
+        int sp = 0;
+
+        for (int instruction : code) {
+            int op = OpCode.opcode(instruction);
+            if (op == OpCode.CONST) {
+                stack[sp++] = constants[OpCode.operand(instruction)];
+                continue;
+            }
+
+            long a;
+            long b = stack[sp - 1];
+            long r;
+            switch (op) {
+                case OpCode.NEG:
+                    if (b == 0) return null;
+                    if (b == Long.MIN_VALUE) return overflow();
+                    stack[sp - 1] = -b;
+                    continue;
+                case OpCode.FACT:
+                    if (b < 0) return null;
+                    if (b >= FACTORIALS.length) return overflow();
+                    stack[sp - 1] = FACTORIALS[(int) b];
+                    continue;
+                case OpCode.ADD:
+                    a = stack[sp - 2];
+                    r = a + b;
+                    if (((a ^ r) & (b ^ r)) < 0) return overflow();
+                    break;
+                case OpCode.SUB:
+                    a = stack[sp - 2];
+                    r = a - b;
+                    if (((a ^ b) & (a ^ r)) < 0) return overflow();
+                    break;
+                case OpCode.MUL:
+                    a = stack[sp - 2];
+                    r = a * b;
+                    if (Math.multiplyHigh(a, b) != (r >> 63)) return overflow();
+                    if (r == 0 && (a < 0 || b < 0)) return null;
+                    break;
+                case OpCode.IDIV:
+                    a = stack[sp - 2];
+                    if (b == 0) return null;
+                    if (a == Long.MIN_VALUE && b == -1) return overflow();
+                    r = a / b;
+                    if (r == 0 && (a < 0) != (b < 0)) return null;
+                    break;
+                case OpCode.POW:
+                    a = stack[sp - 2];
+                    if (b < 0) return null;
+                    r = 1;
+                    // Возведение в степень повторным возведением в квадрат
+                    while (b > 0) {
+                        if ((b & 1) != 0) {
+                            long product = r * a;
+                            if (Math.multiplyHigh(r, a) != (product >> 63)) return overflow();
+                            r = product;
+                        }
+                        b >>= 1;
+                        if (b > 0) {
+                            long square = a * a;
+                            if (Math.multiplyHigh(a, a) != (square >> 63)) return overflow();
+                            a = square;
+                        }
+                    }
+                    break;
+                default:
+                    return null;
+            }
+            stack[sp - 2] = r;
+            sp--;
+        }
+
+        return stack[0];
+    }
+
+    private Number overflow() {
+        overflow = true;
+        return null;
+    }
+
+    private static Number evaluateBig(RpnProgram program) {
+        int[] code = program.code();
+        long[] constants = program.integerConstants();
+        BigInteger[] stack = new BigInteger[program.getMaxStackDepth()];
+        int sp = 0;
+
+        for (int instruction : code) {
+            int op = OpCode.opcode(instruction);
+            if (op == OpCode.CONST) {
+                stack[sp++] = BigInteger.valueOf(constants[OpCode.operand(instruction)]);
+                continue;
+            }
+
+            BigInteger b = stack[sp - 1];
+            BigInteger a;
+            BigInteger r;
+            switch (op) {
+                case OpCode.NEG:
+                    if (b.signum() == 0) return null;
+                    stack[sp - 1] = b.negate();
+                    continue;
+                case OpCode.FACT:
+                    r = factorial(b);
+                    if (r == null) return null;
+                    stack[sp - 1] = r;
+                    continue;
+                case OpCode.ADD:
+                    r = stack[sp - 2].add(b);
+                    break;
+                case OpCode.SUB:
+                    r = stack[sp - 2].subtract(b);
+                    break;
+                case OpCode.MUL:
+                    a = stack[sp - 2];
+                    if (a.bitLength() + b.bitLength() > MAX_BITS) return null;
+                    r = a.multiply(b);
+                    if (r.signum() == 0 && (a.signum() < 0 || b.signum() < 0)) return null;
+                    break;
+                case OpCode.IDIV:
+                    if (b.signum() == 0) return null;
+                    a = stack[sp - 2];
+                    r = a.divide(b);
+                    if (r.signum() == 0 && (a.signum() < 0) != (b.signum() < 0)) return null;
+                    break;
+                case OpCode.POW:
+                    a = stack[sp - 2];
+                    if (b.signum() < 0) return null;
+                    r = power(a, b);
+                    if (r == null) return null;
+                    break;
+                default:
+                    return null;
+            }
+            if (r.bitLength() > MAX_BITS) {
+                return null;
+            }
+            stack[sp - 2] = r;
+            sp--;
+        }
+
+        BigInteger result = stack[0];
+        return result.bitLength() < Long.SIZE ? (Number) result.longValue() : result;
+    }
+
+    private static BigInteger power(BigInteger base, BigInteger exponent) {
+        // 0, 1 и -1 в любой степени остаются маленькими
+        if (base.signum() == 0 || base.abs().equals(BigInteger.ONE)) {
+            if (exponent.signum() == 0) return BigInteger.ONE;
+            return base.signum() < 0 && exponent.testBit(0) ? base : base.abs();
+        }
+        if (exponent.bitLength() >= Integer.SIZE ||
+                (long) base.bitLength() * exponent.intValue() > MAX_BITS) {
+            return null;
+        }
+        return base.pow(exponent.intValue());
+    }
+
+    private static BigInteger factorial(BigInteger n) {
+        if (n.signum() < 0 || n.bitLength() >= Integer.SIZE) {
+            return null;
+        }
+        BigInteger result = BigInteger.ONE;
+        for (int i = 2, last = n.intValue(); i <= last; i++) {
+            result = result.multiply(BigInteger.valueOf(i));
+            if (result.bitLength() > MAX_BITS) {
+                return null;
+            }
+        }
+        return result;
+    }
+}
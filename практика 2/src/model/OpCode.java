@@ -0,0 +1,42 @@
+package model;
+
+// Коды инструкций скомпилированной программы.
+// Младшие 8 бит инструкции - код операции, старшие - операнд (например, индекс константы).
+final class OpCode {
+    static final int CONST = 0;
+    static final int ADD = 1;
+    static final int SUB = 2;
+    static final int MUL = 3;
+    static final int DIV = 4;
+    static final int POW = 5;
+    static final int FACT = 6;
+    static final int NEG = 7;
+    static final int EXP = 8;
+    static final int LOG = 9;
+    static final int LOAD = 10;
+    // Сохранение вершины стека во временную ячейку (без снятия) и чтение из нее
+    static final int TEE = 11;
+    static final int LOAD_TEMP = 12;
+    // Целочисленное деление "//" с отбрасыванием дробной части
+    static final int IDIV = 13;
+    // Коды пользовательских операторов и функций из OperatorRegistry
+    static final int FIRST_CUSTOM = 32;
+
+    static final int OPCODE_BITS = 8;
+    static final int OPCODE_MASK = (1 << OPCODE_BITS) - 1;
+
+    private OpCode() {
+    }
+
+    static int encode(int opcode, int operand) {
+        return opcode | (operand << OPCODE_BITS);
+    }
+
+    static int opcode(int instruction) {
+        return instruction & OPCODE_MASK;
+    }
+
+    static int operand(int instruction) {
+        return instruction >>> OPCODE_BITS;
+    }
+}
@@ -0,0 +1,84 @@
+package model;
+
+import java.util.Arrays;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.ToDoubleFunction;
+
+// Описание оператора или функции в OperatorRegistry: код операции, число аргументов,
+// приоритет, ассоциативность и реализация
+public final class Operator {
+    public enum Kind {
+        PREFIX,
+        INFIX,
+        POSTFIX,
+        FUNCTION
+    }
+
+    private final String name;
+    private final Kind kind;
+    private final int opcode;
+    private final int arity;
+    private final int precedence;
+    private final boolean rightAssociative;
+    private final DoubleUnaryOperator unary;
+    private final DoubleBinaryOperator binary;
+    private final ToDoubleFunction<double[]> function;
+
+    Operator(String name, Kind kind, int opcode, int arity, int precedence, boolean rightAssociative,
+             DoubleUnaryOperator unary, DoubleBinaryOperator binary, ToDoubleFunction<double[]> function) {
+        this.name = name;
+        this.kind = kind;
+        this.opcode = opcode;
+        this.arity = arity;
+        this.precedence = precedence;
+        this.rightAssociative = rightAssociative;
+        this.unary = unary;
+        this.binary = binary;
+        this.function = function;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public int getOpcode() {
+        return opcode;
+    }
+
+    public int getArity() {
+        return arity;
+    }
+
+    public int getPrecedence() {
+        return precedence;
+    }
+
+    public boolean isRightAssociative() {
+        return rightAssociative;
+    }
+
+    public boolean isBuiltIn() {
+        return opcode < OpCode.FIRST_CUSTOM;
+    }
+
+    // Аргументы лежат в values начиная с offset (так интерпретатор передает вершину своего стека)
+    double apply(double[] values, int offset) {
+        if (unary != null) {
+            return unary.applyAsDouble(values[offset]);
+        }
+        if (binary != null) {
+            return binary.applyAsDouble(values[offset], values[offset + 1]);
+        }
+        return function.applyAsDouble(Arrays.copyOfRange(values, offset, offset + arity));
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
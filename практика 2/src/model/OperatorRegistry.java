@@ -0,0 +1,254 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.ToDoubleFunction;
+
+// Таблица операторов и функций, по которой работает ExpressionCompiler.
+// Каждой записи назначается код операции; компилятор и интерпретатор ищут описание
+// по индексу в массиве, а не сравнением строк. Встроенные операции (коды меньше
+// OpCode.FIRST_CUSTOM) выполняются прямо в switch интерпретатора, пользовательские -
+// через Operator.apply, поэтому их регистрация не замедляет встроенные.
+// Регистрация создает новую копию таблицы (копирование при записи), поэтому
+// компиляция в других потоках всегда видит согласованный снимок.
+public final class OperatorRegistry {
+    private static final int MAX_OPCODES = 1 << OpCode.OPCODE_BITS;
+    private static final int ASCII = 128;
+    // Символы, из которых могут состоять пользовательские операторы
+    private static final String SYMBOL_CHARACTERS = "+-*/^!%&|<>=~@#$?:;";
+
+    private volatile Table table;
+    // Вызываются после каждой регистрации (например, сброс кэша скомпилированных выражений)
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    public OperatorRegistry() {
+        Table builtIn = new Table();
+        builtIn.add(binary("+", OpCode.ADD, 2));
+        builtIn.add(binary("-", OpCode.SUB, 2));
+        builtIn.add(binary("*", OpCode.MUL, 3));
+        builtIn.add(binary("/", OpCode.DIV, 3));
+        builtIn.add(binary("//", OpCode.IDIV, 3));
+        builtIn.add(binary("^", OpCode.POW, 4));
+        builtIn.addAlias("**", builtIn.byOpcode[OpCode.POW]);
+        builtIn.add(unary("-", Operator.Kind.PREFIX, OpCode.NEG, 3));
+        builtIn.add(unary("!", Operator.Kind.POSTFIX, OpCode.FACT, 5));
+        builtIn.add(unary("exp", Operator.Kind.FUNCTION, OpCode.EXP, 4));
+        builtIn.add(unary("log", Operator.Kind.FUNCTION, OpCode.LOG, 4));
+        this.table = builtIn;
+    }
+
+    public Operator registerFunction(String name, DoubleUnaryOperator implementation) {
+        return registerFunction(name, 1, implementation, null, null);
+    }
+
+    public Operator registerFunction(String name, DoubleBinaryOperator implementation) {
+        return registerFunction(name, 2, null, implementation, null);
+    }
+
+    // Функция с произвольным числом аргументов: f(a, b, c)
+    public Operator registerFunction(String name, int arity, ToDoubleFunction<double[]> implementation) {
+        if (arity < 1) {
+            throw new IllegalArgumentException("Function must take at least one argument");
+        }
+        return registerFunction(name, arity, null, null, implementation);
+    }
+
+    // Бинарный оператор из одного или двух символов, например "%" или "<>"
+    public synchronized Operator registerOperator(String symbol, int precedence, boolean rightAssociative,
+                                                  DoubleBinaryOperator implementation) {
+        checkSymbol(symbol);
+        if (table.symbol(symbol) != null) {
+            throw new IllegalArgumentException("Operator already registered: " + symbol);
+        }
+        Table updated = table.copy();
+        Operator operator = new Operator(symbol, Operator.Kind.INFIX, updated.nextOpcode(), 2, precedence,
+                rightAssociative, null, implementation, null);
+        updated.add(operator);
+        table = updated;
+        fireChanged();
+        return operator;
+    }
+
+    public void addChangeListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public boolean isFunction(String name) {
+        return table.function(name) != null;
+    }
+
+    public List<Operator> getOperators() {
+        List<Operator> operators = new ArrayList<>();
+        for (Operator operator : table.byOpcode) {
+            if (operator != null) {
+                operators.add(operator);
+            }
+        }
+        return Collections.unmodifiableList(operators);
+    }
+
+    Table table() {
+        return table;
+    }
+
+    private synchronized Operator registerFunction(String name, int arity, DoubleUnaryOperator unary,
+                                                   DoubleBinaryOperator binary,
+                                                   ToDoubleFunction<double[]> function) {
+        if (!ExpressionCompiler.isIdentifier(name)) {
+            throw new IllegalArgumentException("Invalid function name: " + name);
+        }
+        if (unary == null && binary == null && function == null) {
+            throw new IllegalArgumentException("Function implementation cannot be null");
+        }
+        if (table.function(name) != null) {
+            throw new IllegalArgumentException("Function already registered: " + name);
+        }
+        Table updated = table.copy();
+        Operator operator = new Operator(name, Operator.Kind.FUNCTION, updated.nextOpcode(), arity, 4, false,
+                unary, binary, function);
+        updated.add(operator);
+        table = updated;
+        fireChanged();
+        return operator;
+    }
+
+    private void fireChanged() {
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    private static void checkSymbol(String symbol) {
+        if (symbol == null || symbol.isEmpty() || symbol.length() > 2) {
+            throw new IllegalArgumentException("Operator symbol must have one or two characters");
+        }
+        for (int i = 0; i < symbol.length(); i++) {
+            if (SYMBOL_CHARACTERS.indexOf(symbol.charAt(i)) < 0) {
+                throw new IllegalArgumentException("Invalid operator symbol: " + symbol);
+            }
+        }
+        // Иначе "2*-3" разбиралось бы как оператор "*-"
+        if (symbol.length() == 2 && (symbol.charAt(1) == '-' || symbol.charAt(1) == '+')) {
+            throw new IllegalArgumentException("Invalid operator symbol: " + symbol);
+        }
+    }
+
+    private static Operator binary(String symbol, int opcode, int precedence) {
+        return new Operator(symbol, Operator.Kind.INFIX, opcode, 2, precedence, false,
+                null, (a, b) -> RpnEvaluator.applyBinary(opcode, a, b), null);
+    }
+
+    private static Operator unary(String name, Operator.Kind kind, int opcode, int precedence) {
+        return new Operator(name, kind, opcode, 1, precedence, false,
+                a -> RpnEvaluator.applyUnary(opcode, a), null, null);
+    }
+
+    // Снимок таблицы; после публикации не изменяется
+    static final class Table {
+        private final Operator[] byOpcode;
+        private final Operator[] singles;
+        private final Operator[] pairs;
+        private final Operator[] prefixes;
+        private Operator[] functions;
+
+        Table() {
+            byOpcode = new Operator[MAX_OPCODES];
+            singles = new Operator[ASCII];
+            pairs = new Operator[ASCII * ASCII];
+            prefixes = new Operator[ASCII];
+            functions = new Operator[0];
+        }
+
+        private Table(Table source) {
+            byOpcode = source.byOpcode.clone();
+            singles = source.singles.clone();
+            pairs = source.pairs.clone();
+            prefixes = source.prefixes.clone();
+            functions = source.functions.clone();
+        }
+
+        Operator operator(int opcode) {
+            return byOpcode[opcode];
+        }
+
+        // Инфиксный или постфиксный оператор из символов c и next (next = -1 - конец выражения).
+        // Компилятор сначала проверяет двухсимвольный оператор, затем односимвольный
+        Operator pair(char c, int next) {
+            if (c >= ASCII || next < 0 || next >= ASCII) {
+                return null;
+            }
+            return pairs[c * ASCII + next];
+        }
+
+        Operator single(char c) {
+            return c < ASCII ? singles[c] : null;
+        }
+
+        Operator prefix(char c) {
+            return c < ASCII ? prefixes[c] : null;
+        }
+
+        Operator function(CharSequence name) {
+            for (Operator function : functions) {
+                if (ExpressionCompiler.matches(name, 0, name.length(), function.getName())) {
+                    return function;
+                }
+            }
+            return null;
+        }
+
+        // Описания по коду операции; программа хранит ссылку на этот массив
+        Operator[] operators() {
+            return byOpcode;
+        }
+
+        private Operator symbol(String symbol) {
+            if (symbol.length() == 1) {
+                return singles[symbol.charAt(0)];
+            }
+            return pairs[symbol.charAt(0) * ASCII + symbol.charAt(1)];
+        }
+
+        private Table copy() {
+            return new Table(this);
+        }
+
+        private int nextOpcode() {
+            for (int opcode = OpCode.FIRST_CUSTOM; opcode < MAX_OPCODES; opcode++) {
+                if (byOpcode[opcode] == null) {
+                    return opcode;
+                }
+            }
+            throw new IllegalStateException("Too many custom operators");
+        }
+
+        private void add(Operator operator) {
+            byOpcode[operator.getOpcode()] = operator;
+            switch (operator.getKind()) {
+                case PREFIX:
+                    prefixes[operator.getName().charAt(0)] = operator;
+                    break;
+                case FUNCTION:
+                    functions = Arrays.copyOf(functions, functions.length + 1);
+                    functions[functions.length - 1] = operator;
+                    break;
+                default:
+                    addAlias(operator.getName(), operator);
+                    break;
+            }
+        }
+
+        private void addAlias(String symbol, Operator operator) {
+            if (symbol.length() == 1) {
+                singles[symbol.charAt(0)] = operator;
+            } else {
+                pairs[symbol.charAt(0) * ASCII + symbol.charAt(1)] = operator;
+            }
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package model;
+
+// Интерпретатор RpnProgram над примитивным стеком double[].
+// Стек переиспользуется между вызовами, поэтому экземпляр не потокобезопасен
+// и вычисление не создает объектов.
+public class RpnEvaluator {
+    private static final double[] NO_VARIABLES = new double[0];
+
+    private static final ThreadLocal<RpnEvaluator> LOCAL = ThreadLocal.withInitial(RpnEvaluator::new);
+
+    static final String DIVISION_BY_ZERO = "Division by zero";
+    private static final String NEGATIVE_FACTORIAL = "Factorial of negative number";
+
+    private double[] stack = new double[16];
+    private double[] row = NO_VARIABLES;
+    // Ошибка последнего вычисления tryEvaluate или null
+    private ErrorCode error;
+
+    // Интерпретатор текущего потока
+    static RpnEvaluator local() {
+        return LOCAL.get();
+    }
+
+    public double evaluate(RpnProgram program) {
+        return evaluate(program, NO_VARIABLES);
+    }
+
+    // Построчное вычисление по столбцам: columns[i] - значения i-й переменной,
+    // результат строки r записывается в output[r]
+    public void evaluate(RpnProgram program, double[][] columns, double[] output) {
+        double[] row = rowFor(columns.length);
+        for (int r = 0; r < output.length; r++) {
+            for (int v = 0; v < columns.length; v++) {
+                row[v] = columns[v][r];
+            }
+            output[r] = evaluate(program, row);
+        }
+    }
+
+    public double evaluate(RpnProgram program, double[] variables) {
+        double value = tryEvaluate(program, variables);
+        if (error != null) {
+            throw error.toException(getErrorMessage());
+        }
+        return value;
+    }
+
+    // Вычисление без исключений: при ошибке возвращает NaN, код ошибки - getError()
+    public double tryEvaluate(RpnProgram program) {
+        return tryEvaluate(program, NO_VARIABLES);
+    }
+
+    public double tryEvaluate(RpnProgram program, double[] variables) {
+        error = null;
+        int[] code = program.code();
+        double[] constants = program.constants();
+        double[] stack = stackFor(program);
+        // Временные ячейки расположены в том же массиве сразу за стеком
+        int temps = program.getMaxStackDepth();
+        int sp = 0;
+
+        for (int pc = 0; pc < code.length; pc++) {
+            int instruction = code[pc];
+            switch (instruction & OpCode.OPCODE_MASK) {
+                case OpCode.CONST:
+                    stack[sp++] = constants[instruction >>> OpCode.OPCODE_BITS];
+                    break;
+                case OpCode.LOAD:
+                    stack[sp++] = variables[instruction >>> OpCode.OPCODE_BITS];
+                    break;
+                case OpCode.TEE:
+                    stack[temps + (instruction >>> OpCode.OPCODE_BITS)] = stack[sp - 1];
+                    break;
+                case OpCode.LOAD_TEMP:
+                    stack[sp++] = stack[temps + (instruction >>> OpCode.OPCODE_BITS)];
+                    break;
+                case OpCode.ADD:
+                    sp--;
+                    stack[sp - 1] += stack[sp];
+                    break;
+                case OpCode.SUB:
+                    sp--;
+                    stack[sp - 1] -= stack[sp];
+                    break;
+                case OpCode.MUL:
+                    sp--;
+                    stack[sp - 1] *= stack[sp];
+                    break;
+                case OpCode.DIV:
+                    sp--;
+                    if (stack[sp] == 0) {
+                        error = ErrorCode.DIVISION_BY_ZERO;
+                        return Double.NaN;
+                    }
+                    stack[sp - 1] /= stack[sp];
+                    break;
+                case OpCode.IDIV:
+                    sp--;
+                    if (stack[sp] == 0) {
+                        error = ErrorCode.DIVISION_BY_ZERO;
+                        return Double.NaN;
+                    }
+                    stack[sp - 1] = truncate(stack[sp - 1] / stack[sp]);
+                    break;
+                case OpCode.POW:
+                    sp--;
+                    stack[sp - 1] = Math.pow(stack[sp - 1], stack[sp]);
+                    break;
+                case OpCode.NEG:
+                    stack[sp - 1] = -stack[sp - 1];
+                    break;
+                case OpCode.FACT:
+                    if (stack[sp - 1] < 0) {
+                        error = ErrorCode.NEGATIVE_FACTORIAL;
+                        return Double.NaN;
+                    }
+                    stack[sp - 1] = MathKernel.factorial(stack[sp - 1]);
+                    break;
+                case OpCode.EXP:
+                    stack[sp - 1] = Math.exp(stack[sp - 1]);
+                    break;
+                case OpCode.LOG:
+                    stack[sp - 1] = MathKernel.log2(stack[sp - 1]);
+                    break;
+                default:
+                    sp = applyCustom(program, instruction & OpCode.OPCODE_MASK, stack, sp);
+                    break;
+            }
+        }
+
+        return stack[0];
+    }
+
+    // Пользовательские операторы вызываются по индексу в таблице программы
+    private static int applyCustom(RpnProgram program, int opcode, double[] stack, int sp) {
+        Operator operator = program.customOperator(opcode);
+        if (operator == null) {
+            throw new IllegalStateException("Unknown opcode: " + opcode);
+        }
+        sp -= operator.getArity();
+        stack[sp] = operator.apply(stack, sp);
+        return sp + 1;
+    }
+
+    public ErrorCode getError() {
+        return error;
+    }
+
+    public String getErrorMessage() {
+        if (error == null) {
+            return null;
+        }
+        return error == ErrorCode.DIVISION_BY_ZERO ? DIVISION_BY_ZERO : NEGATIVE_FACTORIAL;
+    }
+
+    // false, если операция над этими значениями дает ошибку вычисления
+    static boolean isDefined(int op, double a, double b) {
+        switch (op) {
+            case OpCode.DIV:
+            case OpCode.IDIV:
+                return b != 0;
+            case OpCode.FACT:
+                return !(a < 0);
+            default:
+                return true;
+        }
+    }
+
+    // Вычисление одной операции над константами - используется при свертке констант
+    static double applyUnary(int op, double a) {
+        switch (op) {
+            case OpCode.NEG:
+                return -a;
+            case OpCode.FACT:
+                return MathKernel.factorial(a);
+            case OpCode.EXP:
+                return Math.exp(a);
+            case OpCode.LOG:
+                return MathKernel.log2(a);
+            default:
+                throw new IllegalArgumentException("Unknown function: " + op);
+        }
+    }
+
+    static double applyBinary(int op, double a, double b) {
+        switch (op) {
+            case OpCode.ADD:
+                return a + b;
+            case OpCode.SUB:
+                return a - b;
+            case OpCode.MUL:
+                return a * b;
+            case OpCode.DIV:
+                return divide(a, b);
+            case OpCode.IDIV:
+                return integerDivide(a, b);
+            case OpCode.POW:
+                return Math.pow(a, b);
+            default:
+                throw new IllegalArgumentException("Unknown operator: " + op);
+        }
+    }
+
+    // Операции с проверками; вызываются также из байт-кода, сгенерированного BytecodeCompiler
+    static double divide(double a, double b) {
+        if (b == 0) throw new ArithmeticException(DIVISION_BY_ZERO);
+        return a / b;
+    }
+
+    static double integerDivide(double a, double b) {
+        if (b == 0) throw new ArithmeticException(DIVISION_BY_ZERO);
+        return truncate(a / b);
+    }
+
+    // Отбрасывание дробной части без приведения к int/long, поэтому без переполнения
+    private static double truncate(double a) {
+        return a < 0 ? Math.ceil(a) : Math.floor(a);
+    }
+
+    private double[] stackFor(RpnProgram program) {
+        int size = program.getMaxStackDepth() + program.getTempCount();
+        if (stack.length < size) {
+            stack = new double[Math.max(size, stack.length * 2)];
+        }
+        return stack;
+    }
+
+    // Переиспользуемый буфер значений переменных одной строки
+    double[] rowFor(int variableCount) {
+        if (row.length < variableCount) {
+            row = new double[variableCount];
+        }
+        return row;
+    }
+}
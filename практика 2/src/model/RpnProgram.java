@@ -0,0 +1,85 @@
+package model;
+
+// Выражение, скомпилированное в обратную польскую запись:
+// массив инструкций и пул констант, без строкового представления.
+public final class RpnProgram {
+    private final int[] code;
+    private final double[] constants;
+    // Точные значения констант; не null только для целочисленных выражений
+    private final long[] integerConstants;
+    // Таблица операторов по коду операции; не null, только если есть пользовательские операторы
+    private final Operator[] operators;
+    private final int maxStackDepth;
+    private final int tempCount;
+    // Точный результат выражения без переменных, если он вычислен IntegerEvaluator
+    private final Number exactValue;
+
+    RpnProgram(int[] code, double[] constants, long[] integerConstants, Operator[] operators, int maxStackDepth) {
+        this(code, constants, integerConstants, operators, maxStackDepth, 0, null);
+    }
+
+    RpnProgram(int[] code, double[] constants, int maxStackDepth, int tempCount) {
+        this(code, constants, null, null, maxStackDepth, tempCount, null);
+    }
+
+    private RpnProgram(int[] code, double[] constants, long[] integerConstants, Operator[] operators,
+                       int maxStackDepth, int tempCount, Number exactValue) {
+        this.code = code;
+        this.constants = constants;
+        this.integerConstants = integerConstants;
+        this.operators = operators;
+        this.maxStackDepth = maxStackDepth;
+        this.tempCount = tempCount;
+        this.exactValue = exactValue;
+    }
+
+    // Программа из одной константы с известным точным значением
+    static RpnProgram exact(Number value) {
+        return new RpnProgram(new int[]{OpCode.encode(OpCode.CONST, 0)},
+                new double[]{value.doubleValue()}, null, null, 1, 0, value);
+    }
+
+    int[] code() {
+        return code;
+    }
+
+    double[] constants() {
+        return constants;
+    }
+
+    long[] integerConstants() {
+        return integerConstants;
+    }
+
+    // Описание пользовательского оператора; null для встроенных
+    Operator customOperator(int opcode) {
+        return operators == null ? null : operators[opcode];
+    }
+
+    boolean hasCustomOperators() {
+        return operators != null;
+    }
+
+    public int length() {
+        return code.length;
+    }
+
+    public int getMaxStackDepth() {
+        return maxStackDepth;
+    }
+
+    // Число временных ячеек для общих подвыражений
+    public int getTempCount() {
+        return tempCount;
+    }
+
+    // true, если в выражении только целые числа и операции + - * // ^ !
+    public boolean isIntegral() {
+        return integerConstants != null;
+    }
+
+    // Точный результат (Long или BigInteger) или null, если он не вычислялся
+    public Number getExactValue() {
+        return exactValue;
+    }
+}
@@ -0,0 +1,55 @@
+package model;
+
+// Операции над блоками без Vector API: простые циклы, которые JIT по возможности
+// векторизует сам (C2 superword)
+final class ScalarColumnKernel implements ColumnKernel {
+    @Override
+    public void add(double[] a, int aOffset, double[] b, int bOffset, double[] result, int length) {
+        for (int i = 0; i < length; i++) {
+            result[i] = a[aOffset + i] + b[bOffset + i];
+        }
+    }
+
+    @Override
+    public void subtract(double[] a, int aOffset, double[] b, int bOffset, double[] result, int length) {
+        for (int i = 0; i < length; i++) {
+            result[i] = a[aOffset + i] - b[bOffset + i];
+        }
+    }
+
+    @Override
+    public void multiply(double[] a, int aOffset, double[] b, int bOffset, double[] result, int length) {
+        for (int i = 0; i < length; i++) {
+            result[i] = a[aOffset + i] * b[bOffset + i];
+        }
+    }
+
+    @Override
+    public void divide(double[] a, int aOffset, double[] b, int bOffset, double[] result, int length) {
+        for (int i = 0; i < length; i++) {
+            result[i] = a[aOffset + i] / b[bOffset + i];
+        }
+    }
+
+    @Override
+    public void negate(double[] a, int aOffset, double[] result, int length) {
+        for (int i = 0; i < length; i++) {
+            result[i] = -a[aOffset + i];
+        }
+    }
+
+    @Override
+    public boolean containsZero(double[] a, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            if (a[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isVectorized() {
+        return false;
+    }
+}
@@ -0,0 +1,343 @@
+package model;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Таблица именованных ячеек с формулами, ссылающимися на другие ячейки: "b" = "a * 2 + c".
+// Зависимости образуют ориентированный граф без циклов (цикл отклоняется при записи формулы).
+// После изменения ячейки пересчитываются только она и ячейки, зависящие от нее прямо или
+// косвенно, - в топологическом порядке, по уровням: ячейки одного уровня друг от друга
+// не зависят и считаются параллельно в ForkJoinPool.
+// Ошибка вычисления (деление на ноль, ссылка на пустую ячейку) сохраняется в ячейке
+// и распространяется на зависимые ячейки. Методы синхронизированы.
+public class Spreadsheet {
+    // Уровень меньшего размера считается в текущем потоке
+    private static final int LEVEL_GRANULARITY = 64;
+
+    private final CalculatorModel model;
+    private final ForkJoinPool pool;
+    private final Map<String, Cell> cells = new HashMap<>();
+    private int lastRecalculationCount;
+
+    public Spreadsheet(CalculatorModel model) {
+        this(model, ForkJoinPool.commonPool());
+    }
+
+    public Spreadsheet(CalculatorModel model, ForkJoinPool pool) {
+        this.model = model;
+        this.pool = pool;
+    }
+
+    // Запись формулы; имена переменных в формуле - ссылки на другие ячейки.
+    // Ошибка разбора или циклическая ссылка - IllegalArgumentException, таблица не меняется
+    public synchronized void set(String name, String formula) {
+        checkName(name);
+        CompiledExpression expression = model.compile(formula);
+        Cell cell = cells.get(name);
+        List<String> references = expression.getVariables();
+
+        // Цикл появляется, если одна из ссылок зависит от самой ячейки
+        if (references.contains(name)) {
+            throw new IllegalArgumentException("Circular reference: " + name + " -> " + name);
+        }
+        if (cell != null && !references.isEmpty()) {
+            List<String> path = findDependentPath(cell, references);
+            if (path != null) {
+                throw new IllegalArgumentException("Circular reference: " + String.join(" -> ", path));
+            }
+        }
+
+        if (cell == null) {
+            cell = new Cell(name);
+            cells.put(name, cell);
+        }
+        unlink(cell);
+        cell.formula = formula;
+        cell.expression = expression;
+        cell.precedents = new Cell[references.size()];
+        cell.arguments = new double[references.size()];
+        for (int i = 0; i < references.size(); i++) {
+            Cell precedent = cells.computeIfAbsent(references.get(i), Cell::new);
+            precedent.dependents.add(cell);
+            cell.precedents[i] = precedent;
+        }
+        recalculate(cell);
+    }
+
+    // Число записывается формулой без экспоненты: компилятор не разбирает запись вида 1.0E10
+    public synchronized void set(String name, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Cell value must be finite");
+        }
+        set(name, BigDecimal.valueOf(value).toPlainString());
+    }
+
+    // Очистка ячейки; зависящие от нее ячейки получают ошибку "Unknown cell"
+    public synchronized void remove(String name) {
+        Cell cell = cells.get(name);
+        if (cell == null || cell.formula == null) {
+            return;
+        }
+        unlink(cell);
+        cell.formula = null;
+        cell.expression = null;
+        cell.precedents = new Cell[0];
+        if (cell.dependents.isEmpty()) {
+            cells.remove(name);
+            lastRecalculationCount = 0;
+        } else {
+            recalculate(cell);
+        }
+    }
+
+    // Значение ячейки; NaN, если ячейка пустая или вычислена с ошибкой
+    public synchronized double get(String name) {
+        Cell cell = cells.get(name);
+        return cell == null || cell.formula == null ? Double.NaN : cell.value;
+    }
+
+    // Сообщение об ошибке ячейки или null
+    public synchronized String getError(String name) {
+        Cell cell = cells.get(name);
+        if (cell == null || cell.formula == null) {
+            return "Unknown cell: " + name;
+        }
+        return cell.error;
+    }
+
+    public synchronized String getFormula(String name) {
+        Cell cell = cells.get(name);
+        return cell == null ? null : cell.formula;
+    }
+
+    public synchronized boolean contains(String name) {
+        Cell cell = cells.get(name);
+        return cell != null && cell.formula != null;
+    }
+
+    // Имена заполненных ячеек в алфавитном порядке
+    public synchronized Set<String> getCells() {
+        Set<String> names = new TreeSet<>();
+        for (Cell cell : cells.values()) {
+            if (cell.formula != null) {
+                names.add(cell.name);
+            }
+        }
+        return Collections.unmodifiableSet(names);
+    }
+
+    // Ячейки, на которые ссылается формула ячейки
+    public synchronized List<String> getPrecedents(String name) {
+        Cell cell = cells.get(name);
+        if (cell == null || cell.expression == null) {
+            return Collections.emptyList();
+        }
+        return cell.expression.getVariables();
+    }
+
+    // Ячейки, формулы которых ссылаются на эту ячейку
+    public synchronized Set<String> getDependents(String name) {
+        Cell cell = cells.get(name);
+        Set<String> names = new TreeSet<>();
+        if (cell != null) {
+            for (Cell dependent : cell.dependents) {
+                names.add(dependent.name);
+            }
+        }
+        return Collections.unmodifiableSet(names);
+    }
+
+    // Сколько ячеек было пересчитано последним изменением
+    public synchronized int getLastRecalculationCount() {
+        return lastRecalculationCount;
+    }
+
+    private void checkName(String name) {
+        if (name == null || !ExpressionCompiler.isIdentifier(name) ||
+                model.getOperatorRegistry().isFunction(name)) {
+            throw new IllegalArgumentException("Invalid cell name: " + name);
+        }
+    }
+
+    // Удаление обратных ссылок на ячейку; пустые ячейки, на которые больше никто не ссылается, удаляются
+    private void unlink(Cell cell) {
+        for (Cell precedent : cell.precedents) {
+            precedent.dependents.remove(cell);
+            if (precedent.formula == null && precedent.dependents.isEmpty()) {
+                cells.remove(precedent.name);
+            }
+        }
+    }
+
+    // Поиск по зависимым ячейкам от cell до любой из references. Зависимых обычно меньше,
+    // чем ячеек, от которых зависит ячейка, поэтому поиск идет вниз по графу.
+    // Возвращает цикл в порядке ссылок: cell -> reference -> ... -> cell
+    private static List<String> findDependentPath(Cell cell, List<String> references) {
+        Set<String> targets = new HashSet<>(references);
+        Map<Cell, Cell> parents = new HashMap<>();
+        Deque<Cell> stack = new ArrayDeque<>();
+        parents.put(cell, null);
+        stack.push(cell);
+        while (!stack.isEmpty()) {
+            Cell current = stack.pop();
+            if (current != cell && targets.contains(current.name)) {
+                List<String> path = new ArrayList<>();
+                path.add(cell.name);
+                for (Cell c = current; c != null; c = parents.get(c)) {
+                    path.add(c.name);
+                }
+                return path;
+            }
+            for (Cell dependent : current.dependents) {
+                if (!parents.containsKey(dependent)) {
+                    parents.put(dependent, current);
+                    stack.push(dependent);
+                }
+            }
+        }
+        return null;
+    }
+
+    // Пересчет ячейки и всех зависящих от нее ячеек по уровням (алгоритм Кана)
+    private void recalculate(Cell changed) {
+        // Затронутые ячейки: обход по обратным ссылкам
+        List<Cell> affected = new ArrayList<>();
+        Deque<Cell> stack = new ArrayDeque<>();
+        changed.pending = 0;
+        affected.add(changed);
+        stack.push(changed);
+        while (!stack.isEmpty()) {
+            for (Cell dependent : stack.pop().dependents) {
+                if (dependent.pending < 0) {
+                    dependent.pending = 0;
+                    affected.add(dependent);
+                    stack.push(dependent);
+                }
+            }
+        }
+        // Для каждой ячейки - число затронутых ячеек, которые нужно посчитать раньше нее
+        for (Cell cell : affected) {
+            for (Cell dependent : cell.dependents) {
+                dependent.pending++;
+            }
+        }
+
+        Cell[] level = {changed};
+        while (level.length > 0) {
+            evaluateLevel(level);
+            List<Cell> next = new ArrayList<>();
+            for (Cell cell : level) {
+                cell.pending = -1;
+                for (Cell dependent : cell.dependents) {
+                    if (--dependent.pending == 0) {
+                        next.add(dependent);
+                    }
+                }
+            }
+            level = next.toArray(new Cell[0]);
+        }
+        lastRecalculationCount = affected.size();
+    }
+
+    private void evaluateLevel(Cell[] level) {
+        if (level.length <= LEVEL_GRANULARITY) {
+            for (Cell cell : level) {
+                cell.evaluate();
+            }
+        } else {
+            pool.invoke(new LevelTask(level, 0, level.length));
+        }
+    }
+
+    private static final class Cell {
+        private final String name;
+        // Ячейки, которые ссылаются на эту. Список, а не множество: пересчет обходит его
+        // несколько раз, а удаление бывает только при замене формулы
+        private final List<Cell> dependents = new ArrayList<>(2);
+        // null - пустая ячейка, на которую только ссылаются
+        private String formula;
+        private CompiledExpression expression;
+        private Cell[] precedents = new Cell[0];
+        private double[] arguments;
+        private double value = Double.NaN;
+        private String error;
+        // Счетчик для пересчета; -1 вне пересчета
+        private int pending = -1;
+
+        Cell(String name) {
+            this.name = name;
+        }
+
+        // Значения ссылок уже посчитаны: они на предыдущих уровнях
+        void evaluate() {
+            if (formula == null) {
+                value = Double.NaN;
+                error = "Unknown cell: " + name;
+                return;
+            }
+            for (int i = 0; i < precedents.length; i++) {
+                Cell precedent = precedents[i];
+                if (precedent.formula == null) {
+                    fail("Unknown cell: " + precedent.name);
+                    return;
+                }
+                if (precedent.error != null) {
+                    fail("Error in cell " + precedent.name);
+                    return;
+                }
+                arguments[i] = precedent.value;
+            }
+            try {
+                RpnEvaluator evaluator = RpnEvaluator.local();
+                value = evaluator.tryEvaluate(expression.getProgram(), arguments);
+                error = evaluator.getErrorMessage();
+            } catch (RuntimeException e) {
+                // Исключение пользовательской функции не должно прерывать пересчет остальных ячеек
+                fail(e.getMessage() != null ? e.getMessage() : e.toString());
+            }
+        }
+
+        private void fail(String message) {
+            value = Double.NaN;
+            error = message;
+        }
+    }
+
+    private static final class LevelTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Cell[] cells;
+        private final int from;
+        private final int to;
+
+        LevelTask(Cell[] cells, int from, int to) {
+            this.cells = cells;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEVEL_GRANULARITY) {
+                for (int i = from; i < to; i++) {
+                    cells[i].evaluate();
+                }
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new LevelTask(cells, from, middle), new LevelTask(cells, middle, to));
+        }
+    }
+}
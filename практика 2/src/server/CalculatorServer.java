@@ -0,0 +1,143 @@
+package server;
+
+import controller.CalculatorController;
+import model.CalculatorModel;
+import view.PipeView;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Сетевой режим калькулятора: TCP на локальном адресе, протокол как у --pipe -
+// строка выражения на входе, строка результата или "Error: ..." на выходе.
+// Каждое соединение обслуживает свой поток (виртуальный, если JVM их поддерживает),
+// все соединения используют одну модель и ее общий кэш скомпилированных выражений.
+// Клиент может отправлять выражения, не дожидаясь ответов: ответы идут в том же порядке
+// и отправляются пачкой, когда прочитанные запросы закончились.
+public class CalculatorServer implements AutoCloseable {
+    private final CalculatorModel model;
+    private final int port;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+    private ServerSocket serverSocket;
+    private ExecutorService executor;
+    private boolean virtualThreads;
+    private Thread acceptor;
+    private volatile boolean closed;
+
+    // port = 0 - любой свободный порт (см. getPort)
+    public CalculatorServer(CalculatorModel model, int port) {
+        this.model = model;
+        this.port = port;
+    }
+
+    public synchronized void start() throws IOException {
+        if (serverSocket != null) {
+            throw new IllegalStateException("Server already started");
+        }
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        executor = newVirtualThreadExecutor();
+        virtualThreads = executor != null;
+        if (executor == null) {
+            executor = newPlatformThreadExecutor();
+        }
+        acceptor = new Thread(this::acceptConnections, "calculator-server");
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    // true, если соединения обслуживаются виртуальными потоками (Java 21+)
+    public boolean isUsingVirtualThreads() {
+        return virtualThreads;
+    }
+
+    // Ожидание остановки сервера
+    public void join() throws InterruptedException {
+        acceptor.join();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        for (Socket connection : connections) {
+            connection.close();
+        }
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void acceptConnections() {
+        while (!closed) {
+            Socket connection;
+            try {
+                connection = serverSocket.accept();
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("Error: " + e.getMessage());
+                }
+                return;
+            }
+            connections.add(connection);
+            executor.execute(() -> serve(connection));
+        }
+    }
+
+    private void serve(Socket connection) {
+        try (Socket socket = connection) {
+            // Ответы и так собираются в пачки, задержка Нейгла только увеличила бы время ответа
+            socket.setTcpNoDelay(true);
+            PipeView pipe = new PipeView(socket.getInputStream(), socket.getOutputStream(), 0, true);
+            new CalculatorController(model).processPipe(pipe);
+        } catch (UncheckedIOException | SocketException e) {
+            // Клиент закрыл соединение, не дочитав ответы
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+        } finally {
+            connections.remove(connection);
+        }
+    }
+
+    // Виртуальные потоки есть только в Java 21+, поэтому метод ищется через reflection;
+    // null - JVM их не поддерживает
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newPlatformThreadExecutor() {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "calculator-connection-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
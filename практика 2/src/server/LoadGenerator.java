@@ -0,0 +1,189 @@
+package server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Нагрузочный клиент для CalculatorServer: connections соединений, в каждом requests выражений
+// пачками по pipeline штук (следующая пачка отправляется после ответов на предыдущую).
+// Задержка запроса - время от отправки его пачки до получения ответа на него.
+public class LoadGenerator {
+    // Число различных выражений на соединение: часть запросов попадает в кэш модели, часть нет
+    private static final int DISTINCT_EXPRESSIONS = 4096;
+    private static final String[] OPERATORS = {"+", "-", "*", "/"};
+    // Пачка отправляется целиком до чтения ответов, поэтому запросы и ответы пачки должны
+    // помещаться в буферы сокетов, иначе клиент и сервер будут ждать друг друга
+    private static final int MAX_PIPELINE = 1024;
+
+    private final String host;
+    private final int port;
+    private final int connections;
+    private final int requests;
+    private final int pipeline;
+
+    public LoadGenerator(String host, int port, int connections, int requests, int pipeline) {
+        if (connections < 1 || requests < 1 || pipeline < 1) {
+            throw new IllegalArgumentException("Connections, requests and pipeline depth must be positive");
+        }
+        if (pipeline > MAX_PIPELINE) {
+            throw new IllegalArgumentException("Pipeline depth cannot exceed " + MAX_PIPELINE);
+        }
+        this.host = host;
+        this.port = port;
+        this.connections = connections;
+        this.requests = requests;
+        this.pipeline = pipeline;
+    }
+
+    public Report run() throws IOException, InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(connections);
+        try {
+            List<Future<long[]>> results = new ArrayList<>();
+            long start = System.nanoTime();
+            for (int i = 0; i < connections; i++) {
+                int seed = i;
+                results.add(executor.submit(() -> runConnection(seed)));
+            }
+
+            long[][] latencies = new long[connections][];
+            for (int i = 0; i < connections; i++) {
+                latencies[i] = results.get(i).get();
+            }
+            long elapsed = System.nanoTime() - start;
+            return new Report(latencies, elapsed);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Задержки запросов соединения в наносекундах; ошибка вычисления в ответе - задержка со знаком минус
+    private long[] runConnection(int seed) throws IOException {
+        String[] expressions = generateExpressions(new Random(seed));
+        long[] latencies = new long[requests];
+
+        try (Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            BufferedWriter writer = new BufferedWriter(
+                    new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+
+            for (int sent = 0; sent < requests; sent += pipeline) {
+                int batch = Math.min(pipeline, requests - sent);
+                long batchStart = System.nanoTime();
+                for (int i = 0; i < batch; i++) {
+                    writer.write(expressions[(sent + i) % expressions.length]);
+                    writer.newLine();
+                }
+                writer.flush();
+
+                for (int i = 0; i < batch; i++) {
+                    String response = reader.readLine();
+                    if (response == null) {
+                        throw new IOException("Server closed the connection");
+                    }
+                    long latency = System.nanoTime() - batchStart;
+                    latencies[sent + i] = response.startsWith("Error:") ? -latency : latency;
+                }
+            }
+        }
+        return latencies;
+    }
+
+    // Выражения вида "12 * 7.5 - 3 / 4"; деления на ноль нет, поэтому ошибки означают сбой сервера
+    private static String[] generateExpressions(Random random) {
+        String[] expressions = new String[DISTINCT_EXPRESSIONS];
+        for (int i = 0; i < expressions.length; i++) {
+            StringBuilder expression = new StringBuilder();
+            expression.append(random.nextInt(1000) + 1);
+            int operations = 1 + random.nextInt(6);
+            for (int k = 0; k < operations; k++) {
+                expression.append(' ').append(OPERATORS[random.nextInt(OPERATORS.length)]).append(' ');
+                if (random.nextBoolean()) {
+                    expression.append(random.nextInt(1000) + 1);
+                } else {
+                    expression.append(random.nextInt(100) + 1).append('.').append(random.nextInt(100));
+                }
+            }
+            expressions[i] = expression.toString();
+        }
+        return expressions;
+    }
+
+    public static final class Report {
+        private final long requests;
+        private final long errors;
+        private final long elapsedNanos;
+        private final long[] sorted;
+
+        Report(long[][] latencies, long elapsedNanos) {
+            long total = 0;
+            for (long[] connection : latencies) {
+                total += connection.length;
+            }
+            long[] all = new long[(int) total];
+            long errors = 0;
+            int position = 0;
+            for (long[] connection : latencies) {
+                for (long latency : connection) {
+                    if (latency < 0) {
+                        errors++;
+                        latency = -latency;
+                    }
+                    all[position++] = latency;
+                }
+            }
+            Arrays.sort(all);
+            this.requests = total;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+            this.sorted = all;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public double getThroughput() {
+            return requests * 1e9 / elapsedNanos;
+        }
+
+        // Процентиль задержки в микросекундах, percentile от 0 до 100
+        public double getLatencyMicros(double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d requests (%d errors) in %.2f s: %.0f req/s, latency p50 %.1f us, " +
+                            "p99 %.1f us, p99.9 %.1f us, max %.1f us",
+                    requests, errors, elapsedNanos / 1e9, getThroughput(), getLatencyMicros(50),
+                    getLatencyMicros(99), getLatencyMicros(99.9), getLatencyMicros(100));
+        }
+    }
+}
@@ -14,6 +14,7 @@ public class CalculatorView {
         System.out.println("Supported operations: +, -, *, /, ^ or ** (power), ! (factorial)");
         System.out.println("Supported functions: exp(), log() (base 2)");
         System.out.println("Example: -3234+((exp(2)*843/log(3234)-4232123)/(34+123+32+5))*3234");
+        System.out.println("Type 'stats' to show engine statistics");
         System.out.print("> ");
         return scanner.nextLine().trim();
     }
@@ -28,6 +29,11 @@ public class CalculatorView {
         System.out.println();
     }
 
+    public void displayMessage(String message) {
+        System.out.println(message);
+        System.out.println();
+    }
+
     public void close() {
         scanner.close();
     }
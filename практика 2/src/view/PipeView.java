@@ -0,0 +1,104 @@
+package view;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+// Неинтерактивный режим: одно выражение на строку на входе, одна строка результата на выходе.
+// Подсказки не печатаются, вывод сбрасывается только каждые flushInterval строк и в конце.
+// В режиме flushWhenIdle вывод сбрасывается еще и перед ожиданием следующей строки, если
+// на входе больше нет готовых данных: так работает сетевой клиент, который отправляет
+// несколько выражений подряд (конвейер) и ждет ответов.
+public class PipeView {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final BufferedReader reader;
+    private final BufferedWriter writer;
+    private final int flushInterval;
+    private final boolean flushWhenIdle;
+    private int pendingLines;
+
+    public PipeView(InputStream in, OutputStream out) {
+        this(in, out, 0);
+    }
+
+    // flushInterval = 0 - сбрасывать вывод только при заполнении буфера и в конце
+    public PipeView(InputStream in, OutputStream out, int flushInterval) {
+        this(in, out, flushInterval, false);
+    }
+
+    public PipeView(InputStream in, OutputStream out, int flushInterval, boolean flushWhenIdle) {
+        if (flushInterval < 0) {
+            throw new IllegalArgumentException("Flush interval cannot be negative");
+        }
+        this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE);
+        this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        this.flushInterval = flushInterval;
+        this.flushWhenIdle = flushWhenIdle;
+    }
+
+    // null - конец входных данных
+    public String readLine() {
+        try {
+            if (flushWhenIdle && !reader.ready()) {
+                flush();
+            }
+            return reader.readLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // true, если следующая строка уже есть во входном буфере и readLine не будет ждать ввода
+    public boolean isInputReady() {
+        try {
+            return reader.ready();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public boolean isFlushWhenIdle() {
+        return flushWhenIdle;
+    }
+
+    public void displayResult(double result) {
+        writeLine(Double.toString(result));
+    }
+
+    public void displayError(String message) {
+        writeLine("Error: " + message);
+    }
+
+    public void flush() {
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void close() {
+        flush();
+    }
+
+    private void writeLine(String line) {
+        try {
+            writer.write(line);
+            writer.newLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        if (flushInterval > 0 && ++pendingLines >= flushInterval) {
+            pendingLines = 0;
+            flush();
+        }
+    }
+}
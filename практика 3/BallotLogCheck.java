@@ -0,0 +1,222 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+// Проверка журнала голосов VotingSystem.BallotLog: восстановление после перезапуска,
+// отрезание недописанного или испорченного хвоста, отказ открывать журнал с испорченной
+// записью в середине и один голос на СНИЛС после повторной регистрации. Перезапуск - это отдельный процесс VotingSystem с командами из stdin.
+// Обычная программа, как PrincipalRegistryBenchmark:
+//   javac -encoding UTF-8 VotingSystem.java BallotLogCheck.java
+//   java BallotLogCheck
+// При ошибке бросает IllegalStateException, иначе печатает "Все проверки пройдены".
+public class BallotLogCheck {
+    private static final String ALREADY_VOTED = "Вы уже проголосовали в этом голосовании!";
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("ballot-log-check");
+        try {
+            checkReplay(dir.resolve("replay"));
+            checkTruncation(dir.resolve("truncation"));
+            checkCorruption(dir.resolve("corruption"));
+            checkReregistration(dir.resolve("restart"));
+            System.out.println("Все проверки пройдены");
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    // Все записанные голоса читаются обратно в том же порядке
+    private static void checkReplay(Path dataDir) throws IOException {
+        List<String> written = writeBallots(dataDir, 500);
+        List<String> replayed = replay(dataDir);
+        check(replayed.equals(written), "прочитано " + replayed.size() + " записей из " + written.size());
+        System.out.println("Восстановление: " + replayed.size() + " записей");
+    }
+
+    // Хвост, оборванный посреди записи, мусор после последней записи и запись с неверной
+    // CRC отрезаются при открытии; предыдущие записи сохраняются
+    private static void checkTruncation(Path dataDir) throws IOException {
+        List<String> written = writeBallots(dataDir, 10);
+        Path file = dataDir.resolve("ballots.log");
+        long intact = Files.size(file);
+
+        // Последняя запись оборвана на середине
+        try (FileOutputStream out = new FileOutputStream(file.toFile(), true)) {
+            out.getChannel().truncate(intact - 3);
+        }
+        expect(dataDir, written.subList(0, written.size() - 1), "оборванная запись");
+        long afterCut = Files.size(file);
+        check(afterCut < intact - 3, "файл не укорочен до конца целой записи: " + afterCut);
+
+        // Мусор после последней целой записи
+        Files.write(file, new byte[] {0, 0, 0, 5, 1, 2, 3, 4, 9, 9}, StandardOpenOption.APPEND);
+        expect(dataDir, written.subList(0, written.size() - 1), "мусор в конце");
+        check(Files.size(file) == afterCut, "мусор не отрезан: " + Files.size(file));
+
+        // Испорченный байт данных последней записи: CRC не сходится
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 1] ^= 0x5A;
+        Files.write(file, bytes);
+        expect(dataDir, written.subList(0, written.size() - 2), "неверная CRC");
+        System.out.println("Отрезание хвоста: " + Files.size(file) + " байт из " + intact);
+    }
+
+    // Испорченная запись в середине - не недописанный хвост: журнал не открывается,
+    // файл не меняется, и голоса после испорченной записи не теряются
+    private static void checkCorruption(Path dataDir) throws IOException {
+        writeBallots(dataDir, 10);
+        Path file = dataDir.resolve("ballots.log");
+        List<Long> ends = recordEnds(Files.readAllBytes(file));
+
+        // Последний байт данных пятой записи: неверная CRC, за ней еще шесть записей
+        byte[] crcBroken = Files.readAllBytes(file);
+        crcBroken[(int) (ends.get(4) - 1)] ^= 0x5A;
+        expectRefused(dataDir, crcBroken, "неверная CRC в середине");
+
+        // Длина пятой записи: отрицательная, как после порчи заголовка
+        byte[] lengthBroken = Files.readAllBytes(file);
+        lengthBroken[(int) (long) ends.get(3)] = (byte) 0xFF;
+        expectRefused(dataDir, lengthBroken, "неверная длина в середине");
+        System.out.println("Порча в середине: журнал не открыт, " + lengthBroken.length + " байт сохранено");
+    }
+
+    // Голос в первом запуске, повторная регистрация с тем же СНИЛС под другим логином во втором:
+    // второй голос не принимается, в журнале ровно два голоса (первый избиратель и user1)
+    private static void checkReregistration(Path dataDir) throws IOException, InterruptedException {
+        String endDate = LocalDate.now().plusYears(1).format(DateTimeFormatter.ofPattern("dd.MM.yyyy"));
+        String first = run(dataDir,
+                "1", "cik1", "cik123", "1", "Check", endDate, "6",
+                "2", "Voter", "01.01.1990", "11111111111", "voter", "pass",
+                "1", "voter", "pass", "1", "1", "1", "5",
+                "3");
+        check(first.contains("учтен."), "голос в первом запуске не учтен:\n" + first);
+
+        String second = run(dataDir,
+                "2", "Voter", "01.01.1990", "11111111111", "voter2", "pass",
+                "1", "voter2", "pass", "1", "1", "5",
+                "1", "user1", "user123", "1", "1", "1", "5",
+                "3");
+        check(second.contains("Регистрация успешна!"), "повторная регистрация не прошла:\n" + second);
+        check(second.contains(ALREADY_VOTED), "повторный голос принят:\n" + second);
+        check(second.contains("учтен."), "голос user1 не учтен:\n" + second);
+
+        List<String> records = replay(dataDir);
+        long ballots = records.stream().filter(record -> record.startsWith("BALLOT")).count();
+        check(ballots == 2, "в журнале " + ballots + " голосов вместо 2: " + records);
+        System.out.println("Повторная регистрация: " + ballots + " голоса в журнале");
+    }
+
+    // Одно голосование и count голосов от разных СНИЛС; возвращает записи в виде строк
+    private static List<String> writeBallots(Path dataDir, int count) throws IOException {
+        List<String> written = new ArrayList<>();
+        VotingSystem.BallotLog log = VotingSystem.BallotLog.open(dataDir, 0, record -> { });
+        try {
+            List<VotingSystem.Candidate> candidates = List.of(
+                    new VotingSystem.Candidate("a", null, "A"), new VotingSystem.Candidate("b", null, "B"));
+            VotingSystem.Voting voting = new VotingSystem.Voting("Check", LocalDate.of(2030, 1, 1), candidates);
+            log.awaitDurable(log.enqueueVoting(voting));
+            written.add("VOTING Check 2");
+            for (int i = 0; i < count; i++) {
+                String snils = String.format("%011d", 30_000_000_000L + i);
+                String candidate = candidates.get(i % 2).login;
+                log.appendBallot(0, snils, candidate);
+                written.add("BALLOT 0 " + snils + " " + candidate);
+            }
+        } finally {
+            log.close();
+        }
+        return written;
+    }
+
+    // Концы записей по заголовкам [длина][CRC]
+    private static List<Long> recordEnds(byte[] bytes) {
+        List<Long> ends = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.remaining() >= 8) {
+            int length = buffer.getInt();
+            buffer.getInt();
+            buffer.position(buffer.position() + length);
+            ends.add((long) buffer.position());
+        }
+        return ends;
+    }
+
+    private static void expectRefused(Path dataDir, byte[] bytes, String what) throws IOException {
+        Path file = dataDir.resolve("ballots.log");
+        Files.write(file, bytes);
+        try {
+            replay(dataDir);
+            throw new IllegalStateException(what + ": журнал открыт");
+        } catch (IOException e) {
+            check(e.getMessage().contains("позиции"), what + ": в ошибке нет позиции: " + e.getMessage());
+        }
+        check(Arrays.equals(Files.readAllBytes(file), bytes), what + ": файл изменен");
+    }
+
+    private static void expect(Path dataDir, List<String> expected, String what) throws IOException {
+        List<String> replayed = replay(dataDir);
+        check(replayed.equals(expected), what + ": прочитано " + replayed.size() + " записей вместо " + expected.size());
+    }
+
+    // Открытие журнала (с отрезанием хвоста) и чтение записей в виде строк
+    private static List<String> replay(Path dataDir) throws IOException {
+        List<String> records = new ArrayList<>();
+        VotingSystem.BallotLog log = VotingSystem.BallotLog.open(dataDir, 0, record -> {
+            byte type = record.readByte();
+            switch (type) {
+                case VotingSystem.BallotLog.VOTING:
+                    String name = record.readUTF();
+                    record.readLong();
+                    int candidates = record.readInt();
+                    for (int i = 0; i < candidates; i++) {
+                        record.readUTF();
+                        record.readUTF();
+                    }
+                    records.add("VOTING " + name + " " + candidates);
+                    break;
+                case VotingSystem.BallotLog.BALLOT:
+                    records.add("BALLOT " + record.readInt() + " " + record.readUTF() + " " + record.readUTF());
+                    break;
+                default:
+                    throw new IOException("Неизвестный тип записи: " + type);
+            }
+        });
+        log.close();
+        return records;
+    }
+
+    // Запуск VotingSystem в отдельном процессе со строками input на stdin; возвращает вывод
+    private static String run(Path dataDir, String... input) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                "-Dvoting.data.dir=" + dataDir,
+                "VotingSystem")
+                .redirectErrorStream(true)
+                .start();
+        try (Writer stdin = new OutputStreamWriter(process.getOutputStream())) {
+            stdin.write(String.join("\n", input) + "\n");
+        }
+        String output = new String(process.getInputStream().readAllBytes());
+        check(process.waitFor() == 0, "VotingSystem завершился с ошибкой:\n" + output);
+        return output;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException(message);
+        }
+    }
+}
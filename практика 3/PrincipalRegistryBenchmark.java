@@ -0,0 +1,78 @@
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+// Замер входа через VotingSystem.PrincipalRegistry при разном числе учетных записей.
+// Число проб хеш-таблицы на один authenticate не зависит от числа записей (O(1)), но время
+// растет: на миллионах записей таблица и строки логинов не помещаются в кэш процессора,
+// и каждый поиск ограничен промахами кэша, а не числом сравнений.
+// JMH не работает с классами пакета по умолчанию, поэтому это обычная программа:
+//   javac -encoding UTF-8 VotingSystem.java PrincipalRegistryBenchmark.java
+//   java -Xmx2g PrincipalRegistryBenchmark [потоков]
+public class PrincipalRegistryBenchmark {
+    private static final int[] SIZES = {1_000, 10_000, 100_000, 1_000_000, 4_000_000};
+    private static final int LOOKUPS = 4_000_000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        System.out.printf("%12s %14s %14s%n", "Accounts", "Hit ns/op", "Miss ns/op");
+
+        for (int size : SIZES) {
+            VotingSystem.PrincipalRegistry registry = new VotingSystem.PrincipalRegistry();
+            String[] logins = new String[size];
+            for (int i = 0; i < size; i++) {
+                logins[i] = "user" + i;
+                registry.register(new VotingSystem.User(logins[i], "pass", "User " + i, "user"));
+            }
+
+            // Логины запросов выбираются заранее, чтобы в замер не попадала их генерация
+            Random random = new Random(size);
+            String[] hits = new String[LOOKUPS];
+            String[] misses = new String[LOOKUPS];
+            for (int i = 0; i < LOOKUPS; i++) {
+                int index = random.nextInt(size);
+                hits[i] = logins[index];
+                misses[i] = "guest" + index;
+            }
+
+            double hit = Double.MAX_VALUE;
+            double miss = Double.MAX_VALUE;
+            // Лучший из нескольких проходов: первые проходы уходят на прогрев JIT
+            for (int round = 0; round < ROUNDS; round++) {
+                hit = Math.min(hit, measure(registry, hits, threads));
+                miss = Math.min(miss, measure(registry, misses, threads));
+            }
+            System.out.printf("%12d %14.1f %14.1f%n", size, hit, miss);
+        }
+    }
+
+    // Среднее время одного поиска в наносекундах (общее время / число поисков во всех потоках)
+    private static double measure(VotingSystem.PrincipalRegistry registry, String[] logins, int threads)
+            throws InterruptedException {
+        LongAdder found = new LongAdder();
+        Thread[] workers = new Thread[threads];
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int offset = t;
+            workers[t] = new Thread(() -> {
+                int count = 0;
+                for (int i = offset; i < logins.length; i += threads) {
+                    if (registry.authenticate(logins[i], "pass") != null) {
+                        count++;
+                    }
+                }
+                found.add(count);
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        // Результат используется, чтобы JIT не выбросил поиски
+        if (found.sum() < 0) {
+            System.out.println(found.sum());
+        }
+        return (double) elapsed / logins.length;
+    }
+}
@@ -1,16 +1,41 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 
 public class VotingSystem {
     // Структуры данных для хранения информации
-    private static Map<String, User> users = new HashMap<>();
-    private static Map<String, Cik> ciks = new HashMap<>();
-    private static Map<String, Candidate> candidates = new HashMap<>();
-    private static List<Voting> votings = new ArrayList<>();
+    // Все учетные записи (пользователи, ЦИК, кандидаты) с общим пространством логинов
+    private static PrincipalRegistry principals = new PrincipalRegistry();
+    // Голосования создаются редко, а читаются всеми сеансами - список копируется при записи
+    private static List<Voting> votings = new CopyOnWriteArrayList<>();
+    // Номер следующего голосования и блокировка выдачи номеров и публикации (см. addVoting)
+    private static int nextVotingNumber = 0;
+    private static final Object votingsLock = new Object();
+    // Индекс пользователей по СНИЛС для проверки уникальности при регистрации
+    private static SnilsIndex usersBySnils = new SnilsIndex();
     private static User currentUser = null;
+    // Порядковые номера избирателей по СНИЛС (см. User.ordinal)
+    private static final Map<Long, Integer> ordinals = new ConcurrentHashMap<>();
+    private static final AtomicInteger nextOrdinal = new AtomicInteger();
+    // Журнал голосований и голосов; null - работа без сохранения на диск
+    private static BallotLog ballotLog = null;
 
     // Форматы дат
     private static final SimpleDateFormat timestampFormat = new SimpleDateFormat("yyyyMMdd_HHmmss");
@@ -20,6 +45,17 @@ public class VotingSystem {
         // Инициализация тестовых данных
         initializeTestData();
 
+        // Восстановление голосований и голосов из журнала.
+        // Каталог и интервал записи на диск: -Dvoting.data.dir=..., -Dvoting.flush.millis=...
+        Path dataDir = Paths.get(System.getProperty("voting.data.dir", "voting-data"));
+        long flushMillis = Long.getLong("voting.flush.millis", 2);
+        try {
+            ballotLog = BallotLog.open(dataDir, flushMillis, VotingSystem::applyLogRecord);
+        } catch (IOException e) {
+            System.out.println("Ошибка журнала голосов: " + e.getMessage());
+            System.out.println("Голоса не будут сохраняться на диск!");
+        }
+
         // Главный цикл программы
         Scanner scanner = new Scanner(System.in);
         while (true) {
@@ -33,17 +69,17 @@ public class VotingSystem {
 
     private static void initializeTestData() {
         // Администратор
-        users.put("admin", new User("admin", "admin123", "Администратор", "admin"));
+        addUser(new User("admin", "admin123", "Администратор", "admin"));
 
         // Тестовый ЦИК
-        ciks.put("cik1", new Cik("cik1", "cik123", "ЦИК Центральный"));
+        principals.register(new Cik("cik1", "cik123", "ЦИК Центральный"));
 
         // Тестовые кандидаты
-        candidates.put("candidate1", new Candidate("candidate1", "cand123", "Иванов Иван Иванович"));
-        candidates.put("candidate2", new Candidate("candidate2", "cand123", "Петров Петр Петрович"));
+        principals.register(new Candidate("candidate1", "cand123", "Иванов Иван Иванович"));
+        principals.register(new Candidate("candidate2", "cand123", "Петров Петр Петрович"));
 
         // Тестовые пользователи
-        users.put("user1", new User("user1", "user123", "Сидоров Алексей Владимирович", "user", "12345678901", "01.01.1990"));
+        addUser(new User("user1", "user123", "Сидоров Алексей Владимирович", "user", "12345678901", "01.01.1990"));
     }
 
     private static void showLoginMenu(Scanner scanner) {
@@ -64,6 +100,9 @@ public class VotingSystem {
                 registerUser(scanner);
                 break;
             case 3:
+                if (ballotLog != null) {
+                    ballotLog.close();
+                }
                 System.exit(0);
                 break;
             default:
@@ -77,22 +116,19 @@ public class VotingSystem {
         System.out.print("Пароль: ");
         String password = scanner.nextLine();
 
-        // Проверка пользователя
-        if (users.containsKey(login) && users.get(login).password.equals(password)) {
-            currentUser = users.get(login);
-            System.out.println("Вход выполнен как " + currentUser.role);
+        // Один поиск по логину для всех ролей
+        User principal = principals.authenticate(login, password);
+        if (principal == null) {
+            System.out.println("Неверный логин или пароль!");
+            return;
         }
-        // Проверка ЦИК
-        else if (ciks.containsKey(login) && ciks.get(login).password.equals(password)) {
-            currentUser = ciks.get(login);
+        currentUser = principal;
+        if (principal instanceof Cik) {
             System.out.println("Вход выполнен как ЦИК");
-        }
-        // Проверка кандидата
-        else if (candidates.containsKey(login) && candidates.get(login).password.equals(password)) {
-            currentUser = candidates.get(login);
+        } else if (principal instanceof Candidate) {
             System.out.println("Вход выполнен как кандидат");
         } else {
-            System.out.println("Неверный логин или пароль!");
+            System.out.println("Вход выполнен как " + currentUser.role);
         }
     }
 
@@ -110,23 +146,45 @@ public class VotingSystem {
         String password = scanner.nextLine();
 
         // Проверка уникальности логина
-        if (users.containsKey(login) || ciks.containsKey(login) || candidates.containsKey(login)) {
+        if (principals.contains(login)) {
             System.out.println("Логин уже занят!");
             return;
         }
 
-        // Проверка уникальности СНИЛС
-        for (User user : users.values()) {
-            if (user.snils != null && user.snils.equals(snils)) {
-                System.out.println("Пользователь с таким СНИЛС уже зарегистрирован!");
-                return;
-            }
+        // Формат и уникальность СНИЛС, а также логин (его мог занять другой сеанс
+        // после проверки выше) проверяются при добавлении
+        String error = addUser(new User(login, password, fullName, "user", snils, birthDate));
+        if (error != null) {
+            System.out.println(error);
+            return;
         }
-
-        users.put(login, new User(login, password, fullName, "user", snils, birthDate));
         System.out.println("Регистрация успешна!");
     }
 
+    // Добавление пользователя вместе с записью в индексе СНИЛС; null - пользователь добавлен,
+    // иначе текст ошибки. СНИЛС занимается атомарно (putIfAbsent), и если логин оказался
+    // занят, запись в индексе снимается: два сеанса с одним СНИЛС не зарегистрируются оба
+    private static String addUser(User user) {
+        long snils = -1;
+        if (user.snils != null) {
+            snils = SnilsIndex.parse(user.snils);
+            if (snils < 0) {
+                return "СНИЛС должен состоять из 11 цифр!";
+            }
+            if (usersBySnils.putIfAbsent(snils, user) != null) {
+                return "Пользователь с таким СНИЛС уже зарегистрирован!";
+            }
+            user.ordinal = ordinalOf(snils);
+        }
+        if (!principals.register(user)) {
+            if (snils >= 0) {
+                usersBySnils.remove(snils, user);
+            }
+            return "Логин уже занят!";
+        }
+        return null;
+    }
+
     private static void showRoleMenu(Scanner scanner) {
         switch (currentUser.role) {
             case "admin":
@@ -194,7 +252,7 @@ public class VotingSystem {
 
     private static void listUsers() {
         System.out.println("\nСписок пользователей:");
-        for (User user : users.values()) {
+        for (User user : principals.users().values()) {
             System.out.println(user);
         }
     }
@@ -202,8 +260,11 @@ public class VotingSystem {
     private static void deleteUser(Scanner scanner) {
         System.out.print("Введите логин пользователя для удаления: ");
         String login = scanner.nextLine();
-        if (users.containsKey(login)) {
-            users.remove(login);
+        User user = principals.users().get(login);
+        if (user != null && principals.remove(user)) {
+            if (user.snils != null) {
+                usersBySnils.remove(SnilsIndex.parse(user.snils), user);
+            }
             System.out.println("Пользователь удален.");
         } else {
             System.out.println("Пользователь не найден!");
@@ -212,7 +273,7 @@ public class VotingSystem {
 
     private static void listCiks() {
         System.out.println("\nСписок ЦИК:");
-        for (Cik cik : ciks.values()) {
+        for (Cik cik : principals.ciks().values()) {
             System.out.println(cik);
         }
     }
@@ -220,8 +281,8 @@ public class VotingSystem {
     private static void deleteCik(Scanner scanner) {
         System.out.print("Введите логин ЦИК для удаления: ");
         String login = scanner.nextLine();
-        if (ciks.containsKey(login)) {
-            ciks.remove(login);
+        Cik cik = principals.ciks().get(login);
+        if (cik != null && principals.remove(cik)) {
             System.out.println("ЦИК удален.");
         } else {
             System.out.println("ЦИК не найден!");
@@ -236,18 +297,17 @@ public class VotingSystem {
         System.out.print("Введите название ЦИК: ");
         String name = scanner.nextLine();
 
-        if (ciks.containsKey(login)) {
-            System.out.println("ЦИК с таким логином уже существует!");
+        // Логины общие для всех ролей
+        if (!principals.register(new Cik(login, password, name))) {
+            System.out.println("Логин уже занят!");
             return;
         }
-
-        ciks.put(login, new Cik(login, password, name));
         System.out.println("ЦИК создан.");
     }
 
     private static void listCandidates() {
         System.out.println("\nСписок кандидатов:");
-        for (Candidate candidate : candidates.values()) {
+        for (Candidate candidate : principals.candidates().values()) {
             System.out.println(candidate);
         }
     }
@@ -255,8 +315,8 @@ public class VotingSystem {
     private static void deleteCandidate(Scanner scanner) {
         System.out.print("Введите логин кандидата для удаления: ");
         String login = scanner.nextLine();
-        if (candidates.containsKey(login)) {
-            candidates.remove(login);
+        Candidate candidate = principals.candidates().get(login);
+        if (candidate != null && principals.remove(candidate)) {
             System.out.println("Кандидат удален.");
         } else {
             System.out.println("Кандидат не найден!");
@@ -309,13 +369,106 @@ public class VotingSystem {
         try {
             LocalDate endDate = LocalDate.parse(endDateStr, dateFormatter);
             Voting voting = new Voting(name, endDate);
-            votings.add(voting);
+            addVoting(voting, true);
             System.out.println("Голосование создано.");
-        } catch (Exception e) {
+        } catch (UncheckedIOException e) {
+            System.out.println("Ошибка записи в журнал: " + e.getCause().getMessage());
+        } catch (DateTimeParseException e) {
             System.out.println("Неверный формат даты!");
         }
     }
 
+    // Голосование попадает в список после записи в журнал, номер в списке - его номер в журнале.
+    // Под блокировкой только выдача номера и постановка записи в очередь журнала, поэтому
+    // записи лежат в журнале в порядке номеров; ожидание записи на диск идет без блокировки.
+    // Публикуется голосование тоже по порядку номеров: следующее ждет предыдущее. Если запись
+    // не удалась, журнал больше ничего не принимает, поэтому пропуск номера никого не держит
+    private static void addVoting(Voting voting, boolean log) {
+        long sequence = -1;
+        synchronized (votingsLock) {
+            if (log && ballotLog != null) {
+                try {
+                    sequence = ballotLog.enqueueVoting(voting);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            voting.number = nextVotingNumber++;
+        }
+
+        if (sequence >= 0) {
+            try {
+                ballotLog.awaitDurable(sequence);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        synchronized (votingsLock) {
+            boolean interrupted = false;
+            while (votings.size() < voting.number) {
+                try {
+                    votingsLock.wait();
+                } catch (InterruptedException e) {
+                    // Голосование уже в журнале: дожидаемся очереди, прерывание восстанавливаем после
+                    interrupted = true;
+                }
+            }
+            votings.add(voting);
+            votingsLock.notifyAll();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Применение записи журнала при восстановлении
+    private static void applyLogRecord(DataInputStream record) throws IOException {
+        byte type = record.readByte();
+        switch (type) {
+            case BallotLog.VOTING:
+                String name = record.readUTF();
+                LocalDate endDate = LocalDate.ofEpochDay(record.readLong());
+                int count = record.readInt();
+                List<Candidate> votingCandidates = new ArrayList<>();
+                for (int i = 0; i < count; i++) {
+                    String login = record.readUTF();
+                    String fullName = record.readUTF();
+                    // Кандидат, добавленный в прошлом запуске, в реестре уже отсутствует:
+                    // его результаты сохраняются, но войти под ним нельзя
+                    Candidate candidate = principals.candidates().get(login);
+                    votingCandidates.add(candidate != null ? candidate : new Candidate(login, null, fullName));
+                }
+                addVoting(new Voting(name, endDate, votingCandidates), false);
+                break;
+            case BallotLog.BALLOT:
+                int number = record.readInt();
+                long voter = SnilsIndex.parse(record.readUTF());
+                String candidate = record.readUTF();
+                if (number < 0 || number >= votings.size()) {
+                    throw new IOException("Голос в несуществующем голосовании №" + number);
+                }
+                if (voter < 0) {
+                    throw new IOException("Голос без СНИЛС избирателя в голосовании №" + number);
+                }
+                votings.get(number).restore(ordinalOf(voter), candidate);
+                break;
+            default:
+                throw new IOException("Неизвестный тип записи: " + type);
+        }
+    }
+
+    // Номер бита избирателя в VoterLedger. Номер закреплен за СНИЛС, а не за логином:
+    // логин после удаления учетной записи (или после перезапуска, учетные записи
+    // в журнал не пишутся) можно занять заново, а СНИЛС - тот же человек, поэтому
+    // повторная регистрация под новым логином не дает проголосовать второй раз.
+    // Номер не освобождается и при удалении учетной записи: сеанс удаленного пользователя
+    // может успеть проголосовать после любой проверки, и тогда его отметка осталась бы
+    // без СНИЛС. Карта хранит по одной записи на СНИЛС
+    static int ordinalOf(long snils) {
+        return ordinals.computeIfAbsent(snils, key -> nextOrdinal.getAndIncrement());
+    }
+
     private static void addCandidate(Scanner scanner) {
         System.out.print("Введите логин нового кандидата: ");
         String login = scanner.nextLine();
@@ -324,12 +477,10 @@ public class VotingSystem {
         System.out.print("Введите ФИО кандидата: ");
         String fullName = scanner.nextLine();
 
-        if (candidates.containsKey(login)) {
-            System.out.println("Кандидат с таким логином уже существует!");
+        if (!principals.register(new Candidate(login, password, fullName))) {
+            System.out.println("Логин уже занят!");
             return;
         }
-
-        candidates.put(login, new Candidate(login, password, fullName));
         System.out.println("Кандидат добавлен.");
     }
 
@@ -389,7 +540,7 @@ public class VotingSystem {
                 writer.println("Дата окончания: " + voting.endDate.format(dateFormatter));
                 writer.println();
 
-                for (Map.Entry<Candidate, Integer> entry : voting.results.entrySet()) {
+                for (Map.Entry<Candidate, Long> entry : voting.snapshot().entrySet()) {
                     writer.println(entry.getKey().fullName + ": " + entry.getValue() + " голосов");
                 }
 
@@ -429,7 +580,7 @@ public class VotingSystem {
         switch (groupType) {
             case 1:
                 System.out.println("\nРезультаты по кандидатам:");
-                for (Map.Entry<Candidate, Integer> entry : voting.results.entrySet()) {
+                for (Map.Entry<Candidate, Long> entry : voting.snapshot().entrySet()) {
                     System.out.println(entry.getKey().fullName + ": " + entry.getValue() + " голосов");
                 }
                 break;
@@ -465,7 +616,7 @@ public class VotingSystem {
         int sortType = scanner.nextInt();
         scanner.nextLine();
 
-        List<Map.Entry<Candidate, Integer>> entries = new ArrayList<>(voting.results.entrySet());
+        List<Map.Entry<Candidate, Long>> entries = new ArrayList<>(voting.snapshot().entrySet());
 
         switch (sortType) {
             case 1:
@@ -483,7 +634,7 @@ public class VotingSystem {
         }
 
         System.out.println("\nОтсортированные результаты:");
-        for (Map.Entry<Candidate, Integer> entry : entries) {
+        for (Map.Entry<Candidate, Long> entry : entries) {
             System.out.println(entry.getKey().fullName + ": " + entry.getValue() + " голосов");
         }
     }
@@ -531,8 +682,8 @@ public class VotingSystem {
         System.out.println("\nРезультаты в предыдущих голосованиях:");
 
         for (Voting voting : votings) {
-            if (voting.results.containsKey(candidate)) {
-                System.out.println(voting.name + ": " + voting.results.get(candidate) + " голосов");
+            if (voting.hasCandidate(candidate)) {
+                System.out.println(voting.name + ": " + voting.getVotes(candidate) + " голосов");
             }
         }
     }
@@ -542,7 +693,7 @@ public class VotingSystem {
         System.out.println("\nВсе голосования с участием кандидата:");
 
         for (Voting voting : votings) {
-            if (voting.results.containsKey(candidate)) {
+            if (voting.hasCandidate(candidate)) {
                 System.out.println(voting.name + " (до " + voting.endDate.format(dateFormatter) + ")");
             }
         }
@@ -553,7 +704,8 @@ public class VotingSystem {
         System.out.println("1. Проголосовать");
         System.out.println("2. Просмотреть список кандидатов");
         System.out.println("3. Просмотреть все голосования");
-        System.out.println("4. Выход");
+        System.out.println("4. Мои голосования");
+        System.out.println("5. Выход");
         System.out.print("Выберите действие: ");
 
         int choice = scanner.nextInt();
@@ -570,6 +722,9 @@ public class VotingSystem {
                 listVotingsForUser();
                 break;
             case 4:
+                listVotedVotings();
+                break;
+            case 5:
                 currentUser = null;
                 break;
             default:
@@ -603,9 +758,13 @@ public class VotingSystem {
         }
 
         Voting selectedVoting = activeVotings.get(votingChoice);
+        if (selectedVoting.hasVoted(currentUser)) {
+            System.out.println("Вы уже проголосовали в этом голосовании!");
+            return;
+        }
 
         System.out.println("\nКандидаты:");
-        List<Candidate> votingCandidates = new ArrayList<>(selectedVoting.results.keySet());
+        List<Candidate> votingCandidates = new ArrayList<>(selectedVoting.tallies.keySet());
         for (int i = 0; i < votingCandidates.size(); i++) {
             System.out.println((i+1) + ". " + votingCandidates.get(i).fullName);
         }
@@ -620,13 +779,37 @@ public class VotingSystem {
         }
 
         Candidate selectedCandidate = votingCandidates.get(candidateChoice);
-        selectedVoting.results.put(selectedCandidate, selectedVoting.results.getOrDefault(selectedCandidate, 0) + 1);
+        // Проверка и отметка голоса выполняются атомарно: повторный голос не пройдет,
+        // даже если пользователь голосует одновременно из двух сеансов
+        try {
+            if (!selectedVoting.vote(currentUser, selectedCandidate)) {
+                System.out.println("Вы уже проголосовали в этом голосовании!");
+                return;
+            }
+        } catch (UncheckedIOException e) {
+            System.out.println("Голос не учтен, ошибка записи в журнал: " + e.getCause().getMessage());
+            return;
+        }
         System.out.println("Ваш голос за " + selectedCandidate.fullName + " учтен.");
     }
 
+    private static void listVotedVotings() {
+        System.out.println("\nГолосования, в которых вы участвовали:");
+        boolean found = false;
+        for (Voting voting : votings) {
+            if (voting.hasVoted(currentUser)) {
+                System.out.println(voting.name + " (до " + voting.endDate.format(dateFormatter) + ")");
+                found = true;
+            }
+        }
+        if (!found) {
+            System.out.println("Вы еще не голосовали.");
+        }
+    }
+
     private static void listCandidatesForUser() {
         System.out.println("\nСписок кандидатов:");
-        for (Candidate candidate : candidates.values()) {
+        for (Candidate candidate : principals.candidates().values()) {
             System.out.println(candidate.fullName);
             if (candidate.bio != null) {
                 System.out.println("Биография: " + candidate.bio);
@@ -643,7 +826,7 @@ public class VotingSystem {
         for (Voting voting : votings) {
             System.out.println(voting.name + " (до " + voting.endDate.format(dateFormatter) + ")");
             System.out.println("Кандидаты:");
-            for (Candidate candidate : voting.results.keySet()) {
+            for (Candidate candidate : voting.tallies.keySet()) {
                 System.out.println("- " + candidate.fullName);
             }
             System.out.println();
@@ -658,6 +841,9 @@ public class VotingSystem {
         String role;
         String snils;
         String birthDate;
+        // Плотный порядковый номер избирателя - номер бита в VoterLedger (см. ordinalOf).
+        // Назначается при регистрации по СНИЛС; -1 - учетная запись без СНИЛС, голосовать не может
+        int ordinal = -1;
 
         User(String login, String password, String fullName, String role) {
             this(login, password, fullName, role, null, null);
@@ -711,18 +897,637 @@ public class VotingSystem {
     }
 
     static class Voting {
+        private static final int SNAPSHOT_ATTEMPTS = 16;
+
         String name;
         LocalDate endDate;
-        Map<Candidate, Integer> results;
+        // Счетчик голосов на каждого кандидата. Набор кандидатов фиксируется при создании,
+        // поэтому карта только читается, а голоса разных избирателей попадают в разные
+        // ячейки LongAdder - одновременные голосования не блокируют друг друга
+        final Map<Candidate, LongAdder> tallies;
+        // Кто уже проголосовал
+        final VoterLedger voters = new VoterLedger();
+        // Номер в списке голосований и в журнале (см. addVoting)
+        int number;
 
         Voting(String name, LocalDate endDate) {
+            // Добавляем всех кандидатов в голосование с нулевыми результатами
+            this(name, endDate, principals.candidates().values());
+        }
+
+        Voting(String name, LocalDate endDate, Collection<Candidate> candidates) {
             this.name = name;
             this.endDate = endDate;
-            this.results = new HashMap<>();
 
-            // Добавляем всех кандидатов в голосование с нулевыми результатами
-            for (Candidate candidate : candidates.values()) {
-                results.put(candidate, 0);
+            Map<Candidate, LongAdder> tallies = new LinkedHashMap<>();
+            for (Candidate candidate : candidates) {
+                tallies.put(candidate, new LongAdder());
+            }
+            this.tallies = Collections.unmodifiableMap(tallies);
+        }
+
+        // false, если пользователь уже голосовал. Голос учитывается только после записи
+        // в журнал; если запись не удалась, отметка снимается и бросается UncheckedIOException
+        boolean vote(User voter, Candidate candidate) {
+            LongAdder tally = tallies.get(candidate);
+            if (tally == null) {
+                throw new IllegalArgumentException("Кандидат не участвует в голосовании: " + candidate.fullName);
+            }
+            if (voter.ordinal < 0) {
+                throw new IllegalArgumentException("Голосовать могут только пользователи со СНИЛС: " + voter.login);
+            }
+            if (!voters.add(voter.ordinal)) {
+                return false;
+            }
+            if (ballotLog != null) {
+                try {
+                    ballotLog.appendBallot(number, voter.snils, candidate.login);
+                } catch (IOException e) {
+                    voters.remove(voter.ordinal);
+                    throw new UncheckedIOException(e);
+                }
+            }
+            tally.increment();
+            return true;
+        }
+
+        // Голос из журнала при восстановлении
+        void restore(int voterOrdinal, String candidateLogin) throws IOException {
+            for (Map.Entry<Candidate, LongAdder> entry : tallies.entrySet()) {
+                if (entry.getKey().login.equals(candidateLogin)) {
+                    if (voters.add(voterOrdinal)) {
+                        entry.getValue().increment();
+                    }
+                    return;
+                }
+            }
+            throw new IOException("Кандидат " + candidateLogin + " не участвует в голосовании " + name);
+        }
+
+        boolean hasVoted(User voter) {
+            return voter.ordinal >= 0 && voters.contains(voter.ordinal);
+        }
+
+        boolean hasCandidate(Candidate candidate) {
+            return tallies.containsKey(candidate);
+        }
+
+        long getVotes(Candidate candidate) {
+            LongAdder tally = tallies.get(candidate);
+            return tally == null ? 0 : tally.sum();
+        }
+
+        // Согласованный срез результатов: значения всех счетчиков на один момент времени.
+        // Счетчики только растут, поэтому если два прохода подряд дали одинаковые числа,
+        // между проходами счетчики не менялись. Голосующих срез не останавливает.
+        // При непрерывном потоке голосов проходы могут не совпадать никогда, поэтому после
+        // SNAPSHOT_ATTEMPTS попыток берется последний проход: каждое число в нем - значение
+        // своего счетчика в какой-то момент прохода, только не обязательно одном для всех
+        Map<Candidate, Long> snapshot() {
+            long[] current = collect();
+            for (int attempt = 1; attempt < SNAPSHOT_ATTEMPTS; attempt++) {
+                long[] previous = current;
+                current = collect();
+                if (Arrays.equals(previous, current)) {
+                    break;
+                }
+                Thread.onSpinWait();
+            }
+
+            Map<Candidate, Long> snapshot = new LinkedHashMap<>();
+            int i = 0;
+            for (Candidate candidate : tallies.keySet()) {
+                snapshot.put(candidate, current[i++]);
+            }
+            return snapshot;
+        }
+
+        private long[] collect() {
+            long[] counts = new long[tallies.size()];
+            int i = 0;
+            for (LongAdder tally : tallies.values()) {
+                counts[i++] = tally.sum();
+            }
+            return counts;
+        }
+    }
+
+    // Реестр учетных записей: логин -> запись (роль, пароль, данные) в одной
+    // ConcurrentHashMap, поэтому вход - один поиск, а уникальность логина среди всех
+    // ролей обеспечивает putIfAbsent даже при одновременных сеансах.
+    // Индексы по ролям нужны для списков в меню и обновляются вслед за основной картой.
+    static class PrincipalRegistry {
+        private final ConcurrentHashMap<String, User> byLogin = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<String, User> users = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<String, Cik> ciks = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<String, Candidate> candidates = new ConcurrentHashMap<>();
+
+        // false, если логин уже занят
+        boolean register(User principal) {
+            if (byLogin.putIfAbsent(principal.login, principal) != null) {
+                return false;
+            }
+            if (principal instanceof Cik) {
+                ciks.put(principal.login, (Cik) principal);
+            } else if (principal instanceof Candidate) {
+                candidates.put(principal.login, (Candidate) principal);
+            } else {
+                users.put(principal.login, principal);
+            }
+            return true;
+        }
+
+        // false, если запись уже удалена (или логин занят другой записью)
+        boolean remove(User principal) {
+            if (!byLogin.remove(principal.login, principal)) {
+                return false;
+            }
+            users.remove(principal.login, principal);
+            ciks.remove(principal.login, principal);
+            candidates.remove(principal.login, principal);
+            return true;
+        }
+
+        User find(String login) {
+            return byLogin.get(login);
+        }
+
+        boolean contains(String login) {
+            return byLogin.containsKey(login);
+        }
+
+        // null, если логина нет или пароль неверный
+        User authenticate(String login, String password) {
+            User principal = byLogin.get(login);
+            return principal != null && principal.password.equals(password) ? principal : null;
+        }
+
+        Map<String, User> users() {
+            return Collections.unmodifiableMap(users);
+        }
+
+        Map<String, Cik> ciks() {
+            return Collections.unmodifiableMap(ciks);
+        }
+
+        Map<String, Candidate> candidates() {
+            return Collections.unmodifiableMap(candidates);
+        }
+    }
+
+    // Множество проголосовавших: бит на каждый порядковый номер пользователя.
+    // Биты хранятся блоками по 65536 номеров (8 КБ), блок создается при первом голосе
+    // из его диапазона, поэтому на голосование уходит около бита на пользователя,
+    // а пустые диапазоны памяти не занимают. Таблица блоков двухуровневая и
+    // фиксированного размера, все изменения - CAS, без блокировок.
+    static class VoterLedger {
+        private static final int CHUNK_BITS = 16;
+        private static final int WORDS_PER_CHUNK = (1 << CHUNK_BITS) / Long.SIZE;
+        // 2^15 блоков покрывают все неотрицательные int: 128 групп по 256 блоков
+        private static final int GROUP_BITS = 8;
+        private static final int GROUPS = 1 << (Integer.SIZE - 1 - CHUNK_BITS - GROUP_BITS);
+
+        private final AtomicReferenceArray<AtomicReferenceArray<AtomicLongArray>> groups =
+                new AtomicReferenceArray<>(GROUPS);
+
+        // Атомарная проверка и отметка; false, если номер уже был отмечен
+        boolean add(int ordinal) {
+            AtomicLongArray chunk = chunk(ordinal, true);
+            int word = (ordinal >>> 6) & (WORDS_PER_CHUNK - 1);
+            long bit = 1L << ordinal;
+            while (true) {
+                long current = chunk.get(word);
+                if ((current & bit) != 0) {
+                    return false;
+                }
+                if (chunk.compareAndSet(word, current, current | bit)) {
+                    return true;
+                }
+            }
+        }
+
+        // Снятие отметки (голос не удалось записать в журнал)
+        void remove(int ordinal) {
+            AtomicLongArray chunk = chunk(ordinal, false);
+            if (chunk == null) {
+                return;
+            }
+            int word = (ordinal >>> 6) & (WORDS_PER_CHUNK - 1);
+            long bit = 1L << ordinal;
+            while (true) {
+                long current = chunk.get(word);
+                if ((current & bit) == 0 || chunk.compareAndSet(word, current, current & ~bit)) {
+                    return;
+                }
+            }
+        }
+
+        boolean contains(int ordinal) {
+            AtomicLongArray chunk = chunk(ordinal, false);
+            if (chunk == null) {
+                return false;
+            }
+            int word = (ordinal >>> 6) & (WORDS_PER_CHUNK - 1);
+            return (chunk.get(word) & (1L << ordinal)) != 0;
+        }
+
+        private AtomicLongArray chunk(int ordinal, boolean create) {
+            if (ordinal < 0) {
+                throw new IllegalArgumentException("Отрицательный номер пользователя: " + ordinal);
+            }
+            int index = ordinal >>> CHUNK_BITS;
+            int g = index >>> GROUP_BITS;
+            AtomicReferenceArray<AtomicLongArray> group = groups.get(g);
+            if (group == null) {
+                if (!create) {
+                    return null;
+                }
+                // Проигравший гонку берет группу, созданную другим потоком
+                groups.compareAndSet(g, null, new AtomicReferenceArray<>(1 << GROUP_BITS));
+                group = groups.get(g);
+            }
+            int c = index & ((1 << GROUP_BITS) - 1);
+            AtomicLongArray chunk = group.get(c);
+            if (chunk == null) {
+                if (!create) {
+                    return null;
+                }
+                group.compareAndSet(c, null, new AtomicLongArray(WORDS_PER_CHUNK));
+                chunk = group.get(c);
+            }
+            return chunk;
+        }
+    }
+
+    // Хеш-таблица СНИЛС -> пользователь с открытой адресацией: СНИЛС хранится как
+    // 11-значное число long, без строк и упаковки. Линейное пробирование, при удалении
+    // следующие элементы цепочки сдвигаются назад, поэтому меток удаления нет и
+    // поиск остается O(1) при любом числе удалений.
+    // Методы synchronized: таблица общая для всех сеансов, операции короткие.
+    static class SnilsIndex {
+        private static final long EMPTY = -1;
+        private static final int INITIAL_CAPACITY = 16;
+
+        private long[] keys;
+        private User[] values;
+        private int size;
+
+        SnilsIndex() {
+            keys = new long[INITIAL_CAPACITY];
+            values = new User[INITIAL_CAPACITY];
+            Arrays.fill(keys, EMPTY);
+        }
+
+        // СНИЛС из 11 цифр в виде числа; -1, если формат неверный
+        static long parse(String snils) {
+            if (snils == null || snils.length() != 11) {
+                return -1;
+            }
+            long value = 0;
+            for (int i = 0; i < snils.length(); i++) {
+                char c = snils.charAt(i);
+                if (c < '0' || c > '9') {
+                    return -1;
+                }
+                value = value * 10 + (c - '0');
+            }
+            return value;
+        }
+
+        synchronized User get(long snils) {
+            int mask = keys.length - 1;
+            for (int i = slot(snils, mask); keys[i] != EMPTY; i = (i + 1) & mask) {
+                if (keys[i] == snils) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+
+        // Добавление, только если СНИЛС свободен; возвращает уже записанного пользователя или null
+        synchronized User putIfAbsent(long snils, User user) {
+            if (snils < 0) {
+                throw new IllegalArgumentException("Неверный СНИЛС: " + snils);
+            }
+            int mask = keys.length - 1;
+            int i = slot(snils, mask);
+            for (; keys[i] != EMPTY; i = (i + 1) & mask) {
+                if (keys[i] == snils) {
+                    return values[i];
+                }
+            }
+            keys[i] = snils;
+            values[i] = user;
+            // Заполнение не выше 3/4, иначе цепочки пробирования резко удлиняются
+            if (++size > keys.length / 4 * 3) {
+                resize(keys.length * 2);
+            }
+            return null;
+        }
+
+        // Удаление, только если СНИЛС записан за этим пользователем
+        synchronized boolean remove(long snils, User user) {
+            if (snils < 0) {
+                return false;
+            }
+            int mask = keys.length - 1;
+            int i = slot(snils, mask);
+            while (keys[i] != snils) {
+                if (keys[i] == EMPTY) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            if (values[i] != user) {
+                return false;
+            }
+
+            // Сдвиг назад: элемент из j переносится в дыру i, если его исходная ячейка
+            // не лежит циклически между i и j (иначе поиск перестал бы его находить)
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                if (keys[j] == EMPTY) {
+                    break;
+                }
+                int home = slot(keys[j], mask);
+                if (((j - home) & mask) >= ((j - i) & mask)) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    i = j;
+                }
+            }
+            keys[i] = EMPTY;
+            values[i] = null;
+            size--;
+            return true;
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            User[] oldValues = values;
+            keys = new long[capacity];
+            values = new User[capacity];
+            Arrays.fill(keys, EMPTY);
+            int mask = capacity - 1;
+            for (int k = 0; k < oldKeys.length; k++) {
+                if (oldKeys[k] != EMPTY) {
+                    int i = slot(oldKeys[k], mask);
+                    while (keys[i] != EMPTY) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[k];
+                    values[i] = oldValues[k];
+                }
+            }
+        }
+
+        // Перемешивание Фибоначчи: соседние номера СНИЛС расходятся по всей таблице
+        private static int slot(long snils, int mask) {
+            return (int) ((snils * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        }
+    }
+
+    // Журнал голосований и голосов (write-ahead log) в файле ballots.log каталога данных.
+    // Запись: длина данных (int), CRC32 данных (int), данные. Файл только дописывается.
+    // Групповая фиксация: append кладет запись в общий буфер и ждет, пока отдельный поток
+    // запишет накопленные за flushMillis записи одним write и одним force. Поэтому голос
+    // считается принятым только после того, как он на диске, а fsync делится на всех
+    // голосующих в этот момент.
+    // При открытии журнал читается с начала; недописанный хвост (сбой во время записи)
+    // определяется по длине и CRC и отрезается. Испорченная запись, за которой есть данные,
+    // - не хвост: журнал тогда не открывается, а файл остается как есть.
+    static class BallotLog {
+        static final byte VOTING = 1;
+        static final byte BALLOT = 2;
+        private static final int HEADER_BYTES = 8;
+        private static final int MAX_RECORD_BYTES = 1 << 20;
+
+        // Обработчик записи при восстановлении
+        interface Replay {
+            void apply(DataInputStream record) throws IOException;
+        }
+
+        private final FileChannel channel;
+        private final long flushMillis;
+        private final Thread flusher;
+
+        // Буфер записей, ожидающих записи на диск, и номера записей: последней добавленной
+        // и последней записанной. Все поля защищены монитором this
+        private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        private long appended;
+        private long durable;
+        private IOException failure;
+        private boolean closed;
+
+        private BallotLog(FileChannel channel, long flushMillis) {
+            this.channel = channel;
+            this.flushMillis = flushMillis;
+            this.flusher = new Thread(this::flushLoop, "ballot-log-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+
+        static BallotLog open(Path dataDir, long flushMillis, Replay replay) throws IOException {
+            Files.createDirectories(dataDir);
+            FileChannel channel = FileChannel.open(dataDir.resolve("ballots.log"),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                long end = replay(channel, replay);
+                if (end < channel.size()) {
+                    channel.truncate(end);
+                    channel.force(true);
+                }
+                channel.position(end);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+            return new BallotLog(channel, Math.max(0, flushMillis));
+        }
+
+        // Чтение журнала; возвращает позицию конца последней целой записи. Отрезать можно
+        // только запись, которая доходит до конца файла: за испорченной записью в середине
+        // лежат уже принятые голоса, поэтому тогда бросается IOException с ее позицией
+        private static long replay(FileChannel channel, Replay replay) throws IOException {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(channel.position(0))));
+            CRC32 crc = new CRC32();
+            long size = channel.size();
+            long position = 0;
+            while (size - position >= HEADER_BYTES) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                long remaining = size - position - HEADER_BYTES;
+                if (length <= 0 || length > MAX_RECORD_BYTES) {
+                    // Нули до конца файла - место под запись, которая не успела попасть на диск
+                    if (length == 0 && checksum == 0 && onlyZeros(in, remaining)) {
+                        break;
+                    }
+                    throw new IOException("Журнал поврежден: неверная длина записи " + length
+                            + " на позиции " + position);
+                }
+                if (remaining < length) {
+                    break;
+                }
+                byte[] data = new byte[length];
+                in.readFully(data);
+                crc.reset();
+                crc.update(data);
+                if ((int) crc.getValue() != checksum) {
+                    if (remaining == length) {
+                        break;
+                    }
+                    throw new IOException("Журнал поврежден: неверная CRC записи на позиции " + position
+                            + ", после нее еще " + (remaining - length) + " байт");
+                }
+                replay.apply(new DataInputStream(new ByteArrayInputStream(data)));
+                position += HEADER_BYTES + length;
+            }
+            return position;
+        }
+
+        private static boolean onlyZeros(DataInputStream in, long count) throws IOException {
+            for (long i = 0; i < count; i++) {
+                if (in.readByte() != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Постановка в очередь без ожидания записи на диск; возвращает номер записи для awaitDurable
+        long enqueueVoting(Voting voting) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(VOTING);
+            out.writeUTF(voting.name);
+            out.writeLong(voting.endDate.toEpochDay());
+            out.writeInt(voting.tallies.size());
+            for (Candidate candidate : voting.tallies.keySet()) {
+                out.writeUTF(candidate.login);
+                out.writeUTF(candidate.fullName);
+            }
+            return enqueue(bytes.toByteArray());
+        }
+
+        // Избиратель записывается по СНИЛС (см. ordinalOf)
+        void appendBallot(int voting, String voterSnils, String candidate) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(BALLOT);
+            out.writeInt(voting);
+            out.writeUTF(voterSnils);
+            out.writeUTF(candidate);
+            append(bytes.toByteArray());
+        }
+
+        // Возврат - после того, как запись на диске
+        private void append(byte[] data) throws IOException {
+            awaitDurable(enqueue(data));
+        }
+
+        private long enqueue(byte[] data) throws IOException {
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            byte[] header = ByteBuffer.allocate(HEADER_BYTES).putInt(data.length).putInt((int) crc.getValue()).array();
+
+            synchronized (this) {
+                if (failure != null) {
+                    throw failure;
+                }
+                if (closed) {
+                    throw new IOException("Журнал закрыт");
+                }
+                pending.writeBytes(header);
+                pending.writeBytes(data);
+                notifyAll();
+                return ++appended;
+            }
+        }
+
+        synchronized void awaitDurable(long sequence) throws IOException {
+            boolean interrupted = false;
+            while (durable < sequence && failure == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // Запись уже в буфере: дожидаемся ее фиксации, прерывание восстанавливаем после
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (durable < sequence) {
+                throw failure;
+            }
+        }
+
+        private void flushLoop() {
+            while (true) {
+                ByteArrayOutputStream batch;
+                long sequence;
+                synchronized (this) {
+                    while (appended == durable && !closed) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (appended == durable) {
+                        return;
+                    }
+                }
+
+                // Пауза собирает в одну фиксацию голоса, пришедшие за flushMillis
+                if (flushMillis > 0) {
+                    try {
+                        Thread.sleep(flushMillis);
+                    } catch (InterruptedException e) {
+                        // Пауза прервана: фиксируем то, что уже накоплено
+                    }
+                }
+
+                synchronized (this) {
+                    batch = pending;
+                    sequence = appended;
+                    pending = new ByteArrayOutputStream(Math.max(32, batch.size()));
+                }
+                try {
+                    ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    channel.force(false);
+                } catch (IOException e) {
+                    synchronized (this) {
+                        failure = e;
+                        notifyAll();
+                    }
+                    return;
+                }
+                synchronized (this) {
+                    durable = sequence;
+                    notifyAll();
+                }
+            }
+        }
+
+        // Фиксация оставшихся записей и закрытие файла
+        void close() {
+            synchronized (this) {
+                closed = true;
+                notifyAll();
+            }
+            try {
+                flusher.join();
+                channel.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                System.out.println("Ошибка закрытия журнала: " + e.getMessage());
             }
         }
     }